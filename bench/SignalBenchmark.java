@@ -0,0 +1,442 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Benchmarks of the hot paths: every SignalProcessing transform for the
+ * window sizes of the shipped .dat outputs, one at a time, all at once and
+ * through a SignalIndex, the FeatureKernels, Stat, FileReader.readFile, the
+ * ingest of a directory with and without a SignalPipeline and
+ * Classifier.test. Each case is warmed up and then run for a fixed time,
+ * reporting the time and the bytes allocated per operation so the GC
+ * pressure shows next to the throughput.
+ *
+ * Usage, with the project compiled to bin:
+ *
+ * javac -cp bin -d bin bench/SignalBenchmark.java
+ * java -cp bin SignalBenchmark [number of samples...]
+ *
+ * The vector kernels are measured too when compiled and the module is added,
+ * as described in FeatureKernels
+ *
+ * @author enzoroiz
+ *
+ */
+public class SignalBenchmark {
+	/**
+	 * Final fields
+	 */
+	// 8 kHz, as the files in assets/Input Files
+	private static final int SAMPLES_PER_MS = 8;
+	private static final int[] WINDOWS = { 5, 10, 15, 30 };
+	private static final int[] DEFAULT_SIZES = { 2400, 240000, 24000000 };
+	private static final String[] TRANSFORMS = { "energy", "magnitude",
+			"zeroCrossingRate", "movingAverage", "movingAverage IN_PLACE",
+			"movingAverage LAZY", "convolution", "idealDelay", "normalizeSignal",
+			"getSignalInfos" };
+	private static final int FILE_MS = 300;
+	private static final int MAX_INGEST_FILES = 1000;
+	private static final long WARMUP_NS = 500000000L;
+	private static final long MEASURE_NS = 1000000000L;
+
+	// Keeps the results alive so the JIT cannot drop the work
+	private static volatile Object sink;
+
+	/**
+	 * Operation to be measured
+	 */
+	private interface Operation {
+		Object run() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println(String.format("%-40s %12s %14s %16s", "Benchmark",
+				"Samples", "ns/op", "bytes/op"));
+
+		for (int size : sizes) {
+			SignalBuffer sample = randomSignal(size, 42);
+			benchmarkTransforms(sample);
+			benchmarkKernels(sample);
+			benchmarkStat(sample);
+			benchmarkReadFile(sample);
+			benchmarkIngest(sample);
+		}
+
+		for (int size : new int[] { 50, 500, 5000 }) {
+			benchmarkClassifier(size);
+		}
+	}
+
+	/**
+	 * @param sample
+	 */
+	private static void benchmarkTransforms(final SignalBuffer sample)
+			throws Exception {
+		final SignalProcessing signalProcessing = new SignalProcessing(sample,
+				sample.length() / SAMPLES_PER_MS);
+
+		for (final String transform : TRANSFORMS) {
+			// The normalization does not depend on the window
+			int[] windows = transform.equals("normalizeSignal") ? new int[] { 0 }
+					: WINDOWS;
+
+			for (final int window : windows) {
+				String name = "SignalProcessing." + transform;
+				if (window > 0) {
+					name += " " + window + "ms";
+				}
+
+				run(name, sample.length(), new Operation() {
+					@Override
+					public Object run() {
+						return transform(signalProcessing, transform, window,
+								sample);
+					}
+				});
+			}
+		}
+
+		run("SignalProcessing.windowFeatures 5/10/15/30ms", sample.length(),
+				new Operation() {
+					@Override
+					public Object run() {
+						return signalProcessing.windowFeatures(WINDOWS);
+					}
+				});
+
+		run("SignalIndex.<init>", sample.length(), new Operation() {
+			@Override
+			public Object run() {
+				return signalProcessing.buildIndex();
+			}
+		});
+
+		// One query per window, at every position
+		final SignalIndex signalIndex = signalProcessing.buildIndex();
+		run("SignalIndex.energy 5/10/15/30ms", sample.length(),
+				new Operation() {
+					@Override
+					public Object run() {
+						double total = 0;
+						for (int window : WINDOWS) {
+							int windowSize = signalProcessing.windowSize(window);
+							for (int i = 0; i < sample.length(); i++) {
+								total += signalIndex.energy(i, windowSize);
+							}
+						}
+						return total;
+					}
+				});
+	}
+
+	/**
+	 * @param sample
+	 */
+	private static void benchmarkKernels(final SignalBuffer sample)
+			throws Exception {
+		final SignalProcessing signalProcessing = new SignalProcessing(sample,
+				sample.length() / SAMPLES_PER_MS);
+		final double[] x = sample.toArray();
+		int windowSize = signalProcessing.windowSize(30);
+		final int windows = sample.length() / windowSize;
+
+		FeatureKernels vector = FeatureKernels.vector(false);
+		FeatureKernels[] kernels = vector == FeatureKernels.scalar()
+				? new FeatureKernels[] { vector }
+				: new FeatureKernels[] { FeatureKernels.scalar(), vector };
+
+		for (final FeatureKernels kernel : kernels) {
+			final int size = windowSize;
+			run("FeatureKernels.windowSums 30ms " + kernel.getName(),
+					sample.length(), new Operation() {
+						@Override
+						public Object run() {
+							double[] squares = new double[windows];
+							kernel.windowSums(x, 0, size, squares,
+									new double[windows], new int[windows]);
+							return squares;
+						}
+					});
+
+			run("SignalProcessing.getSignalInfos 30ms " + kernel.getName(),
+					sample.length(), new Operation() {
+						@Override
+						public Object run() {
+							return signalProcessing.getSignalInfos(30, kernel);
+						}
+					});
+		}
+	}
+
+	/**
+	 * @param signalProcessing
+	 * @param transform
+	 *            name of the method
+	 * @param window
+	 * @param sample
+	 *            processed
+	 * @return the result of the transform
+	 */
+	private static Object transform(SignalProcessing signalProcessing,
+			String transform, int window, SignalBuffer sample) {
+		switch (transform) {
+		case "energy":
+			return signalProcessing.energyBuffer(window);
+		case "magnitude":
+			return signalProcessing.magnitudeBuffer(window);
+		case "zeroCrossingRate":
+			return signalProcessing.zeroCrossingRateBuffer(window);
+		case "movingAverage":
+			return signalProcessing.movingAverageBuffer(window);
+		case "movingAverage IN_PLACE":
+			return signalProcessing.movingAverageBuffer(window,
+					SignalProcessing.Normalization.IN_PLACE);
+		case "movingAverage LAZY":
+			return signalProcessing.movingAverageBuffer(window,
+					SignalProcessing.Normalization.LAZY);
+		case "convolution":
+			return signalProcessing.convolutionBuffer(window);
+		case "idealDelay":
+			return signalProcessing.idealDelayBuffer(window);
+		case "normalizeSignal":
+			return signalProcessing.normalizeSignal(sample.copy());
+		case "getSignalInfos":
+			return signalProcessing.getSignalInfos(window);
+		default:
+			throw new IllegalArgumentException("Unknown transform "
+					+ transform);
+		}
+	}
+
+	/**
+	 * @param sample
+	 */
+	private static void benchmarkStat(final SignalBuffer sample)
+			throws Exception {
+		run("Stat.<init>", sample.length(), new Operation() {
+			@Override
+			public Object run() {
+				return new Stat(sample);
+			}
+		});
+
+		run("Stat.add", sample.length(), new Operation() {
+			@Override
+			public Object run() {
+				Stat stat = new Stat();
+				for (int i = 0; i < sample.length(); i++) {
+					stat.add(sample.get(i));
+				}
+				return stat;
+			}
+		});
+	}
+
+	/**
+	 * @param sample
+	 *            written to a temporary file, one number per line
+	 */
+	private static void benchmarkReadFile(SignalBuffer sample)
+			throws Exception {
+		final File file = File.createTempFile("benchmark", ".dat");
+		file.deleteOnExit();
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			for (int i = 0; i < sample.length(); i++) {
+				writer.write(Long.toString((long) sample.get(i)));
+				writer.write('\n');
+			}
+		}
+
+		run("FileReader.readFile", sample.length(), new Operation() {
+			@Override
+			public Object run() throws IOException {
+				return FileReader.readFile(file);
+			}
+		});
+
+		file.delete();
+	}
+
+	/**
+	 * Read and process a directory of sample files one by one and with a
+	 * SignalPipeline of one reader and one extractor per processor. The text
+	 * files are parsed every time, without a SampleCache, so both paths do
+	 * the same work
+	 *
+	 * @param sample
+	 *            split in files of FILE_MS, half silence and half speech
+	 */
+	private static void benchmarkIngest(SignalBuffer sample) throws Exception {
+		int fileSize = FILE_MS * SAMPLES_PER_MS;
+		int files = Math.min(sample.length() / fileSize, MAX_INGEST_FILES);
+		if (files == 0) {
+			return;
+		}
+
+		File directory = Files.createTempDirectory("benchmark").toFile();
+		for (int f = 0; f < files; f++) {
+			File file = new File(directory, String.format("%s_%04d.dat",
+					f < files / 2 ? "silence" : "speech", f));
+			try (BufferedWriter writer = new BufferedWriter(new FileWriter(
+					file))) {
+				for (int i = f * fileSize; i < (f + 1) * fileSize; i++) {
+					writer.write(Long.toString((long) sample.get(i)));
+					writer.write('\n');
+				}
+			}
+		}
+
+		final FileReader fileReader = new FileReader(directory.getPath(),
+				false);
+		final ArrayList<File> sampleFiles = fileReader.getSampleFiles();
+		run("Ingest " + files + " files sequential", files * fileSize,
+				new Operation() {
+					@Override
+					public Object run() throws IOException {
+						ArrayList<SignalInfo> signalInfos = new ArrayList<>();
+						for (File file : sampleFiles) {
+							signalInfos.add(new SignalProcessing(fileReader
+									.readSample(file), FILE_MS)
+									.getSignalInfos(30));
+						}
+						return signalInfos;
+					}
+				});
+
+		final int threads = Runtime.getRuntime().availableProcessors();
+		run("Ingest " + files + " files " + threads + " threads",
+				files * fileSize, new Operation() {
+					@Override
+					public Object run() throws IOException {
+						return new SignalPipeline(threads, threads,
+								2 * threads).process(fileReader, FILE_MS, 30);
+					}
+				});
+
+		for (File file : sampleFiles) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * @param signals
+	 *            number of signals of each class
+	 */
+	private static void benchmarkClassifier(int signals) throws Exception {
+		Random random = new Random(7);
+		ArrayList<SignalInfo> silence = new ArrayList<>();
+		ArrayList<SignalInfo> speech = new ArrayList<>();
+		for (int i = 0; i < signals; i++) {
+			silence.add(new SignalInfo(3 + random.nextGaussian() * 0.5,
+					4.5 + random.nextGaussian() * 0.3,
+					1 + random.nextGaussian() * 0.2));
+			speech.add(new SignalInfo(5.5 + random.nextGaussian() * 0.5,
+					5.8 + random.nextGaussian() * 0.3,
+					0.4 + random.nextGaussian() * 0.2));
+		}
+
+		final ArrayList<SignalInfo> silenceSignals = silence;
+		final ArrayList<SignalInfo> speechSignals = speech;
+		run("Classifier.test", signals, new Operation() {
+			@Override
+			public Object run() {
+				Classifier classifier = new Classifier(silenceSignals,
+						speechSignals, 10);
+				classifier.test();
+				return classifier;
+			}
+		});
+	}
+
+	/**
+	 * Warm up the operation and then measure it, printing the time and the
+	 * bytes allocated per operation
+	 *
+	 * @param name
+	 *            of the benchmark
+	 * @param samples
+	 *            handled by each operation
+	 * @param operation
+	 */
+	private static void run(String name, int samples, Operation operation)
+			throws Exception {
+		PrintStream out = System.out;
+		// Classifier.test prints its results
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		long operations = 0;
+		long time;
+		long allocated;
+		try {
+			long start = System.nanoTime();
+			while (System.nanoTime() - start < WARMUP_NS) {
+				sink = operation.run();
+			}
+
+			long allocatedBefore = allocatedBytes();
+			start = System.nanoTime();
+			do {
+				sink = operation.run();
+				operations++;
+				time = System.nanoTime() - start;
+			} while (time < MEASURE_NS);
+			allocated = allocatedBytes() - allocatedBefore;
+		} finally {
+			System.setOut(out);
+		}
+
+		System.out.println(String.format("%-40s %12d %14.1f %16d", name,
+				samples, (double) time / operations, allocated / operations));
+	}
+
+	/**
+	 * @return the bytes allocated by this thread so far, -1 if the JVM does
+	 *         not measure it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @param size
+	 *            number of samples
+	 * @param seed
+	 * @return a signal with the range of the samples in assets/Input Files
+	 */
+	private static SignalBuffer randomSignal(int size, long seed) {
+		Random random = new Random(seed);
+		double[] sample = new double[size];
+		for (int i = 0; i < size; i++) {
+			sample[i] = Math.round(random.nextGaussian() * 2000);
+		}
+
+		return new SignalBuffer(sample);
+	}
+}
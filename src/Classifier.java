@@ -1,5 +1,10 @@
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Class that computes the accuracy of predicting either speech or silence
@@ -16,14 +21,14 @@ public class Classifier {
 	// Probability Speech or Silence
 	private final double PSILENCE = 0.5;
 	private final double PSPEECH = 0.5;
+	// Normal quantile of the 95% confidence interval
+	private static final double Z95 = 1.959964;
 
 	/**
 	 * Instance fields
 	 */
-	private ArrayList<SignalInfo> silenceProcessedSignals;
-	private ArrayList<SignalInfo> speechProcessedSignals;
-	private ArrayList<ArrayList<Stat>> statsSilence;
-	private ArrayList<ArrayList<Stat>> statsSpeech;
+	private FeatureMatrix silenceProcessedSignals;
+	private FeatureMatrix speechProcessedSignals;
 	private int processedSignalsSize;
 	private int signalInfosSize;
 	private int kFold;
@@ -38,80 +43,178 @@ public class Classifier {
 	 */
 	public Classifier(ArrayList<SignalInfo> silenceProcessedSignals,
 			ArrayList<SignalInfo> speechProcessedSignals, int kFold) {
+		this(FeatureMatrix.fromSignalInfos(silenceProcessedSignals,
+				NaiveBayesModel.SILENCE), FeatureMatrix.fromSignalInfos(
+				speechProcessedSignals, NaiveBayesModel.SPEECH), kFold);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param processedSignals
+	 *            labelled as NaiveBayesModel.SILENCE or SPEECH
+	 * @param kFold
+	 *            times
+	 */
+	public Classifier(FeatureMatrix processedSignals, int kFold) {
+		this(processedSignals.withLabel(NaiveBayesModel.SILENCE),
+				processedSignals.withLabel(NaiveBayesModel.SPEECH), kFold);
+	}
+
+	/**
+	 * @param silenceProcessedSignals
+	 * @param speechProcessedSignals
+	 * @param kFold
+	 *            times
+	 */
+	private Classifier(FeatureMatrix silenceProcessedSignals,
+			FeatureMatrix speechProcessedSignals, int kFold) {
+		if (silenceProcessedSignals.features() != speechProcessedSignals
+				.features()) {
+			throw new IllegalArgumentException(
+					"Silence and speech signals need the same features");
+		}
+
 		this.silenceProcessedSignals = silenceProcessedSignals;
 		this.speechProcessedSignals = speechProcessedSignals;
-		this.processedSignalsSize = silenceProcessedSignals.size(); // 50
-		this.signalInfosSize = SignalInfo.NUM_INFO; // 3
+		this.processedSignalsSize = silenceProcessedSignals.rows(); // 50
+		this.signalInfosSize = silenceProcessedSignals.features(); // 3
 		this.kFold = kFold;
-
-		// Initialise Stats Arrays
-		this.statsSilence = new ArrayList<>();
-		this.statsSpeech = new ArrayList<>();
-		for (int i = 0; i < signalInfosSize; i++) {
-			this.statsSilence.add(new ArrayList<Stat>());
-			this.statsSpeech.add(new ArrayList<Stat>());
-		}
 	}
 
 	/**
 	 * Realise the Kfold cross validation by splitting the data between speech
 	 * and silence signals For each one of the Kfold iteration keeps a
 	 * k/processedSignalsSize as test set and the remaining as training set for
-	 * both speech and silence samples. Computes the statistics for the training
-	 * set and put it in an array list
+	 * both speech and silence samples. The sufficient statistics of the whole
+	 * data and of each fold are computed in a single pass, and the ones of
+	 * each training set are the total minus the fold.
+	 * 
+	 * @param silenceSignals
+	 *            in the order used to split the folds
+	 * @param speechSignals
+	 *            in the order used to split the folds
+	 * @return the Naive Bayes model trained for each fold
 	 */
-	private void kFold() {
-		int lowerBound;
-		int upperBound;
-
-		ArrayList<Double> silenceInfo;
-		ArrayList<Double> speechInfo;
+	private NaiveBayesModel[] kFold(FeatureMatrix silenceSignals,
+			FeatureMatrix speechSignals) {
+		int foldSize = processedSignalsSize / kFold;
+		GaussianModel[][] silenceModels = new GaussianModel[kFold][signalInfosSize];
+		GaussianModel[][] speechModels = new GaussianModel[kFold][signalInfosSize];
 
 		// For each type of information: E - M - Z //3
 		for (int i = 0; i < signalInfosSize; i++) {
-			// For each folding //10
-			for (int fold = 0; fold < kFold; fold++) {
-				silenceInfo = new ArrayList<>();
-				speechInfo = new ArrayList<>();
-				lowerBound = fold * (processedSignalsSize / kFold);
-				upperBound = (fold + 1) * (processedSignalsSize / kFold);
-
-				// For each information of the processed signal //50
-				for (int j = 0; j < processedSignalsSize; j++) {
-					if (!(j >= lowerBound && j < upperBound)) { // Adding
-																// training sets
-						silenceInfo.add(silenceProcessedSignals.get(j).get(i));
-						speechInfo.add(speechProcessedSignals.get(j).get(i));
-					}
-				}
-				
-				this.statsSilence.get(i).add(new Stat(silenceInfo));
-				this.statsSpeech.get(i).add(new Stat(speechInfo));
+			fitFolds(silenceSignals.column(i), i, foldSize, silenceModels);
+			fitFolds(speechSignals.column(i), i, foldSize, speechModels);
+		}
+
+		NaiveBayesModel[] models = new NaiveBayesModel[kFold];
+		for (int fold = 0; fold < kFold; fold++) {
+			models[fold] = new NaiveBayesModel(
+					silenceSignals.getFeatureNames(), silenceModels[fold],
+					speechModels[fold], PSILENCE, PSPEECH);
+		}
+
+		return models;
+	}
+
+	/**
+	 * @param values
+	 *            of the information of the processed signals
+	 * @param info
+	 *            type of information
+	 * @param foldSize
+	 *            number of signals in each fold
+	 * @param models
+	 *            where the normal distribution of each training set is stored,
+	 *            by fold and type of information
+	 */
+	private void fitFolds(double[] values, int info, int foldSize,
+			GaussianModel[][] models) {
+		double shift = processedSignalsSize > 0 ? values[0] : 0;
+		SufficientStats total = new SufficientStats(shift);
+		SufficientStats[] folds = new SufficientStats[kFold];
+		for (int fold = 0; fold < kFold; fold++) {
+			folds[fold] = new SufficientStats(shift);
+		}
+
+		// For each information of the processed signal //50
+		for (int j = 0; j < processedSignalsSize; j++) {
+			double value = values[j];
+			total.add(value);
+
+			// The signals after the last fold are always in the training set
+			if (foldSize > 0 && j < kFold * foldSize) {
+				folds[j / foldSize].add(value);
 			}
 		}
+
+		for (int fold = 0; fold < kFold; fold++) {
+			models[fold][info] = total.minus(folds[fold]).toGaussian();
+		}
+	}
+
+	/**
+	 * Train the Naive Bayes model with all the processed signals
+	 * 
+	 * @return the model
+	 */
+	public NaiveBayesModel train() {
+		GaussianModel[] silenceModels = new GaussianModel[signalInfosSize];
+		GaussianModel[] speechModels = new GaussianModel[signalInfosSize];
+
+		for (int i = 0; i < signalInfosSize; i++) {
+			silenceModels[i] = fit(silenceProcessedSignals.column(i));
+			speechModels[i] = fit(speechProcessedSignals.column(i));
+		}
+
+		return new NaiveBayesModel(silenceProcessedSignals.getFeatureNames(),
+				silenceModels, speechModels, PSILENCE, PSPEECH);
+	}
+
+	/**
+	 * @param values
+	 *            of one type of information of all the signals
+	 * @return the normal distribution of the information of all the signals
+	 */
+	private GaussianModel fit(double[] values) {
+		SufficientStats stats = new SufficientStats(values[0]);
+		for (double value : values) {
+			stats.add(value);
+		}
+
+		return stats.toGaussian();
 	}
 
 	/**
 	 * For each of the Kfold iteration uses the test set in order to compute the
 	 * accuracy in predicting if the signal analysed is either from a speech or
 	 * silence sample. Do it by applying the Naive Bayes approach to the
-	 * corresponding training set. Compute the accuracy by measuring how many
-	 * times the classification was right.
+	 * corresponding training set, scoring the whole test set of the fold as a
+	 * batch in log space. Compute the accuracy by measuring how many times the
+	 * classification was right.
 	 */
 	public void test() {
-		double posteriorSilenceForSilenceSignal = PSILENCE;
-		double posteriorSpeechForSilenceSignal = PSPEECH;
-		double posteriorSilenceForSpeechSignal = PSILENCE;
-		double posteriorSpeechForSpeechSignal = PSPEECH;
-		double evidenceSilenceSignal;
-		double evidenceSpeechSignal;
+		outputResults(foldResults(silenceProcessedSignals,
+				speechProcessedSignals));
+	}
+
+	/**
+	 * @param silenceSignals
+	 *            in the order used to split the folds
+	 * @param speechSignals
+	 *            in the order used to split the folds
+	 * @return how many signals were classified right in each fold
+	 */
+	private ArrayList<Double> foldResults(FeatureMatrix silenceSignals,
+			FeatureMatrix speechSignals) {
 		double right;
 		int lowerBound;
 		int upperBound;
 
 		ArrayList<Double> guessed = new ArrayList<>();
 
-		kFold();
+		NaiveBayesModel[] models = kFold(silenceSignals, speechSignals);
 
 		// For each fold iteration
 		for (int i = 0; i < kFold; i++) {// 10
@@ -119,63 +222,19 @@ public class Classifier {
 			lowerBound = i * (processedSignalsSize / kFold);
 			upperBound = (i + 1) * (processedSignalsSize / kFold);
 
-			// For each subset
-			for (int j = lowerBound; j < upperBound; j++) {// 5
-				posteriorSilenceForSilenceSignal = PSILENCE;
-				posteriorSpeechForSilenceSignal = PSPEECH;
-				posteriorSilenceForSpeechSignal = PSILENCE;
-				posteriorSpeechForSpeechSignal = PSPEECH;
-
-				// For each type of information
-				for (int m = 0; m < signalInfosSize; m++) {// 3
-					// Calculate the posterior for silence signals
-					posteriorSilenceForSilenceSignal *= statsSilence
-							.get(m)
-							.get(i)
-							.getNormalDistribution(
-									silenceProcessedSignals.get(j).get(m));
-					posteriorSpeechForSilenceSignal *= statsSpeech
-							.get(m)
-							.get(i)
-							.getNormalDistribution(
-									silenceProcessedSignals.get(j).get(m));
-
-					// Calculate the posterior for speech signals
-					posteriorSilenceForSpeechSignal *= statsSilence
-							.get(m)
-							.get(i)
-							.getNormalDistribution(
-									speechProcessedSignals.get(j).get(m));
-					posteriorSpeechForSpeechSignal *= statsSpeech
-							.get(m)
-							.get(i)
-							.getNormalDistribution(
-									speechProcessedSignals.get(j).get(m));
-				}
-
-				// Calculate the evidences
-				evidenceSilenceSignal = posteriorSilenceForSilenceSignal
-						+ posteriorSpeechForSilenceSignal;
-				evidenceSpeechSignal = posteriorSilenceForSpeechSignal
-						+ posteriorSpeechForSpeechSignal;
-
-				// Calculate the posterior for silence signals in %
-				posteriorSilenceForSilenceSignal = posteriorSilenceForSilenceSignal
-						/ evidenceSilenceSignal * 100;
-				posteriorSpeechForSilenceSignal = posteriorSpeechForSilenceSignal
-						/ evidenceSilenceSignal * 100;
-
-				// Calculate the posterior for speech signals in %
-				posteriorSilenceForSpeechSignal = posteriorSilenceForSpeechSignal
-						/ evidenceSpeechSignal * 100;
-				posteriorSpeechForSpeechSignal = posteriorSpeechForSpeechSignal
-						/ evidenceSpeechSignal * 100;
-
-				if (posteriorSilenceForSilenceSignal > posteriorSpeechForSilenceSignal) {
+			// Classify the silence and the speech signals of the subset
+			for (int label : models[i].classify(
+					silenceSignals.slice(lowerBound, upperBound).columns(),
+					null, null)) {
+				if (label == NaiveBayesModel.SILENCE) {
 					right++;
 				}
+			}
 
-				if (posteriorSpeechForSpeechSignal > posteriorSilenceForSpeechSignal) {
+			for (int label : models[i].classify(
+					speechSignals.slice(lowerBound, upperBound).columns(),
+					null, null)) {
+				if (label == NaiveBayesModel.SPEECH) {
 					right++;
 				}
 			}
@@ -183,7 +242,7 @@ public class Classifier {
 			guessed.add(right);
 		}
 
-		outputResults(guessed);
+		return guessed;
 	}
 
 	/**
@@ -204,37 +263,124 @@ public class Classifier {
 	 *            to shuffle and test compute the accuracy
 	 */
 	public void shuffledSampleTest(int times) {
+		shuffledSampleTest(times, System.nanoTime(), 1);
+	}
+
+	/**
+	 * Test the accuracy for "n" times shuffling the processed signals. The
+	 * repetitions are independent and run concurrently; each one shuffles with
+	 * its own random generator, split from the seed in order, so the results
+	 * only depend on the seed and not on the number of threads. Prints the
+	 * mean, the standard deviation and the 95% confidence interval of the
+	 * accuracy
+	 * 
+	 * @param times
+	 *            to shuffle and test compute the accuracy
+	 * @param seed
+	 *            of the random generators
+	 * @param parallelism
+	 *            number of threads
+	 * @return the accuracy of each repetition in %
+	 */
+	public double[] shuffledSampleTest(int times, long seed, int parallelism) {
+		SplittableRandom random = new SplittableRandom(seed);
+		ArrayList<Callable<Double>> repetitions = new ArrayList<>(times);
+
 		for (int i = 0; i < times; i++) {
-			shuffle();
-			test();
+			final SplittableRandom repetitionRandom = random.split();
+			repetitions.add(new Callable<Double>() {
+				@Override
+				public Double call() {
+					return shuffledAccuracy(repetitionRandom);
+				}
+			});
+		}
+
+		double[] accuracies = new double[times];
+		ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+		try {
+			int i = 0;
+			for (Future<Double> accuracy : pool.invokeAll(repetitions)) {
+				accuracies[i++] = accuracy.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Cross validation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Cross validation failed",
+					e.getCause());
+		} finally {
+			pool.shutdown();
 		}
 
+		outputResults(accuracies);
+
+		return accuracies;
 	}
 
 	/**
-	 * Shuffle the processed Signals in order to produce different training and
-	 * test sets
+	 * Shuffle the processed signals in order to produce different training and
+	 * test sets, and compute the accuracy of the kfold validation on them
+	 * 
+	 * @param random
+	 *            generator used only by this repetition
+	 * @return the accuracy in %
 	 */
-	private void shuffle() {
-		ArrayList<SignalInfo> silenceTemp = new ArrayList<>(
-				silenceProcessedSignals);
-		ArrayList<SignalInfo> speechTemp = new ArrayList<>(
-				speechProcessedSignals);
+	private double shuffledAccuracy(SplittableRandom random) {
+		// The speech signals beyond the silence ones keep their place
+		int[] order = new int[Math.max(processedSignalsSize,
+				speechProcessedSignals.rows())];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		// Fisher-Yates, the same permutation for both classes
+		for (int i = processedSignalsSize - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
 
-		ArrayList<Integer> index = new ArrayList<>();
-		for (int i = 0; i < processedSignalsSize; i++) {
-			index.add(i);
+		double right = 0;
+		for (double foldRight : foldResults(
+				silenceProcessedSignals.select(Arrays.copyOf(order,
+						processedSignalsSize)),
+				speechProcessedSignals.select(Arrays.copyOf(order,
+						speechProcessedSignals.rows())))) {
+			right += foldRight;
 		}
 
-		Collections.shuffle(index);
+		int tested = 2 * kFold * (processedSignalsSize / kFold);
+		return right / tested * 100;
+	}
 
-		for (int i = 0; i < processedSignalsSize; i++) {
-			silenceTemp.set(i, silenceProcessedSignals.get(index.get(i)));
-			speechTemp.set(i, speechProcessedSignals.get(index.get(i)));
+	/**
+	 * Prints the mean, the standard deviation and the 95% confidence interval
+	 * of the accuracies
+	 * 
+	 * @param accuracies
+	 *            in %
+	 */
+	private void outputResults(double[] accuracies) {
+		int n = accuracies.length;
+		double sum = 0;
+		for (double accuracy : accuracies) {
+			sum += accuracy;
 		}
+		double mean = sum / n;
 
-		this.silenceProcessedSignals = silenceTemp;
-		this.speechProcessedSignals = speechTemp;
+		double squares = 0;
+		for (double accuracy : accuracies) {
+			squares += (accuracy - mean) * (accuracy - mean);
+		}
+		double standardDeviation = n > 1 ? Math.sqrt(squares / (n - 1)) : 0;
+		double margin = Z95 * standardDeviation / Math.sqrt(n);
 
+		System.out.println("The accuracy over " + n + " shuffled tests was: "
+				+ Stat.round(mean) + "% (standard deviation "
+				+ Stat.round(standardDeviation) + "%, 95% confidence interval ["
+				+ Stat.round(mean - margin) + "%, " + Stat.round(mean + margin)
+				+ "%])");
 	}
 }
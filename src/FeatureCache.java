@@ -0,0 +1,229 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Class that keeps the features extracted from the sample files on disk, so
+ * a rerun only processes the new or modified files. An entry is keyed by the
+ * SHA-256 of the content of the file, the names of the features and the
+ * extraction parameters, so a renamed file is still found and a changed one,
+ * or one extracted with other features, is not. The least recently
+ * used entries are deleted when there are too many. Entries are written in a
+ * temporary file and then renamed, so concurrent runs never read a partial
+ * entry, and an entry deleted by another run is simply computed again
+ *
+ * @author enzoroiz
+ *
+ */
+public class FeatureCache {
+	/**
+	 * Final fields
+	 */
+	// "SIGF" in ASCII
+	private static final int MAGIC = 0x53494746;
+	// Changes whenever the extraction changes, invalidating every entry
+	private static final int VERSION = 2;
+	private static final String EXTENSION = ".feat";
+
+	/**
+	 * Instance fields
+	 */
+	private File directory;
+	private int maxEntries;
+	private String[] featureNames;
+	private volatile boolean writable;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            where the entries are kept, created if needed
+	 * @param maxEntries
+	 *            kept after an eviction
+	 * @param featureNames
+	 *            of the features stored in each entry, in their order
+	 */
+	public FeatureCache(File directory, int maxEntries,
+			String[] featureNames) {
+		this.directory = directory;
+		this.maxEntries = maxEntries;
+		this.featureNames = featureNames.clone();
+		this.writable = true;
+	}
+
+	/**
+	 * @param file
+	 *            sample file
+	 * @param audioSizeInMS
+	 * @param windowSize
+	 * @return the key of the features of the file extracted with the
+	 *         parameters
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public String key(File file, int audioSizeInMS, int windowSize)
+			throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file,
+				"r"); FileChannel channel = randomAccessFile.getChannel()) {
+			digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+		}
+		digest.update(ByteBuffer.allocate(12).putInt(VERSION)
+				.putInt(audioSizeInMS).putInt(windowSize).array());
+		for (String featureName : featureNames) {
+			// Ended by a zero byte, so the names cannot run into each other
+			digest.update(featureName.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(String.format("%02x", b));
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * @param key
+	 * @return the value of each feature stored with the key, null if there is
+	 *         none
+	 */
+	public double[] get(String key) {
+		File entry = new File(directory, key + EXTENSION);
+
+		ByteBuffer bytes;
+		try {
+			bytes = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+		} catch (IOException e) {
+			// Missing, or deleted by another run
+			return null;
+		}
+
+		if (bytes.remaining() != 12 + 8 * featureNames.length
+				|| bytes.getInt() != MAGIC || bytes.getInt() != VERSION
+				|| bytes.getInt() != featureNames.length) {
+			return null;
+		}
+
+		// Mark the entry as recently used
+		entry.setLastModified(System.currentTimeMillis());
+
+		double[] features = new double[featureNames.length];
+		for (int m = 0; m < features.length; m++) {
+			features[m] = bytes.getDouble();
+		}
+
+		return features;
+	}
+
+	/**
+	 * Store the features with the key. If the cache cannot be written, it is
+	 * disabled after printing why
+	 *
+	 * @param key
+	 * @param features
+	 *            the value of each feature, in the order of the names
+	 */
+	public void put(String key, double[] features) {
+		if (features.length != featureNames.length) {
+			throw new IllegalArgumentException("Expected "
+					+ featureNames.length + " features, got "
+					+ features.length);
+		}
+		if (!writable) {
+			return;
+		}
+
+		ByteBuffer bytes = ByteBuffer.allocate(12 + 8 * features.length);
+		bytes.putInt(MAGIC);
+		bytes.putInt(VERSION);
+		bytes.putInt(features.length);
+		for (double feature : features) {
+			bytes.putDouble(feature);
+		}
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()
+					&& !directory.isDirectory()) {
+				throw new IOException("Cannot create the directory "
+						+ directory);
+			}
+
+			File temporary = File.createTempFile(key, ".tmp", directory);
+			try {
+				Files.write(temporary.toPath(), bytes.array());
+				Files.move(temporary.toPath(), new File(directory, key
+						+ EXTENSION).toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				temporary.delete();
+			}
+		} catch (IOException e) {
+			writable = false;
+			System.out.println("The features will not be cached: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Delete the least recently used entries beyond the maximum
+	 *
+	 * @return the number of entries deleted
+	 */
+	public int evict() {
+		File[] entries = directory.listFiles();
+		if (entries == null) {
+			return 0;
+		}
+
+		final long[] lastUsed = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		int count = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (entries[i].getName().endsWith(EXTENSION)) {
+				lastUsed[i] = entries[i].lastModified();
+				order[count++] = i;
+			}
+		}
+
+		if (count <= maxEntries) {
+			return 0;
+		}
+
+		// Most recently used first
+		Arrays.sort(order, 0, count, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(lastUsed[b], lastUsed[a]);
+			}
+		});
+
+		int deleted = 0;
+		for (int i = maxEntries; i < count; i++) {
+			// Another run may have deleted it already
+			if (entries[order[i]].delete()) {
+				deleted++;
+			}
+		}
+
+		return deleted;
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Class with the loops over the samples that the energy, magnitude and zero
+ * crossing rate reduce to: sums of squares, absolute sums and sign changes of
+ * a range of a primitive array. The scalar kernels are always available. The
+ * vector kernels, in VectorFeatureKernels, use the incubating Vector API and
+ * only load when it is compiled and the module is added:
+ *
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin vector/VectorFeatureKernels.java
+ * java --add-modules jdk.incubator.vector -cp bin Main ...
+ *
+ * The kernels used are chosen at startup with -Dkernels=scalar or
+ * -Dkernels=vector, the vector ones by default when they load. Both give the
+ * same sums up to the rounding of the additions, which are done in another
+ * order
+ *
+ * @author enzoroiz
+ *
+ */
+public abstract class FeatureKernels {
+	/**
+	 * Final fields
+	 */
+	public static final String PROPERTY = "kernels";
+	public static final String SCALAR = "scalar";
+	public static final String VECTOR = "vector";
+	private static final String VECTOR_CLASS = "VectorFeatureKernels";
+
+	/**
+	 * Instance fields
+	 */
+	private static FeatureKernels selected;
+
+	/**
+	 * @return the kernels chosen by the kernels system property
+	 */
+	public static synchronized FeatureKernels get() {
+		if (selected == null) {
+			String name = System.getProperty(PROPERTY);
+			if (name == null || name.isEmpty() || name.equals(VECTOR)) {
+				selected = vector(name != null && !name.isEmpty());
+			} else if (name.equals(SCALAR)) {
+				selected = scalar();
+			} else {
+				throw new IllegalArgumentException("Unknown kernels " + name
+						+ ", expected " + SCALAR + " or " + VECTOR);
+			}
+		}
+
+		return selected;
+	}
+
+	/**
+	 * @return the scalar kernels
+	 */
+	public static FeatureKernels scalar() {
+		return ScalarKernels.INSTANCE;
+	}
+
+	/**
+	 * @param verbose
+	 *            if the reason is printed when they cannot be loaded
+	 * @return the vector kernels or, if they cannot be loaded, the scalar ones
+	 */
+	public static FeatureKernels vector(boolean verbose) {
+		try {
+			return (FeatureKernels) Class.forName(VECTOR_CLASS)
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// Not compiled, or the module was not added
+			if (verbose) {
+				System.out.println("The vector kernels are not available, "
+						+ "using the scalar ones: " + e);
+			}
+			return scalar();
+		}
+	}
+
+	/**
+	 * @return the name of the kernels
+	 */
+	public abstract String getName();
+
+	/**
+	 * @param x
+	 * @param from
+	 *            first position
+	 * @param to
+	 *            position after the last one
+	 * @return the sum of the squares of x in the range
+	 */
+	public abstract double sumOfSquares(double[] x, int from, int to);
+
+	/**
+	 * @param x
+	 * @param from
+	 *            first position
+	 * @param to
+	 *            position after the last one
+	 * @return the sum of the absolute values of x in the range
+	 */
+	public abstract double absoluteSum(double[] x, int from, int to);
+
+	/**
+	 * @param x
+	 * @param from
+	 *            first position, compared with the one before it, so at
+	 *            least 1
+	 * @param to
+	 *            position after the last one
+	 * @return how many positions of the range have a sign different from the
+	 *         one before them, zero being positive
+	 */
+	public abstract int zeroCrossings(double[] x, int from, int to);
+
+	/**
+	 * Compute the sums of consecutive windows of x. The first sample of the
+	 * array is compared with a positive one, as in SignalProcessing
+	 *
+	 * @param x
+	 * @param from
+	 *            first position of the first window
+	 * @param windowSize
+	 *            in samples
+	 * @param squares
+	 *            to store the sum of the squares of each window, with one
+	 *            position per window
+	 * @param absolutes
+	 *            to store the sum of the absolute values of each window
+	 * @param crossings
+	 *            to store the zero crossings of each window
+	 */
+	public void windowSums(double[] x, int from, int windowSize,
+			double[] squares, double[] absolutes, int[] crossings) {
+		int windows = squares.length;
+		if (absolutes.length != windows || crossings.length != windows) {
+			throw new IllegalArgumentException(
+					"Every result needs one position per window");
+		}
+		if (from < 0 || windowSize < 1
+				|| from + (long) windows * windowSize > x.length) {
+			throw new IndexOutOfBoundsException(windows + " windows of "
+					+ windowSize + " samples from " + from
+					+ " do not fit an array of " + x.length);
+		}
+
+		for (int w = 0; w < windows; w++) {
+			int start = from + w * windowSize;
+			int end = start + windowSize;
+			squares[w] = sumOfSquares(x, start, end);
+			absolutes[w] = absoluteSum(x, start, end);
+
+			if (start == 0) {
+				crossings[w] = (x[0] >= 0 ? 0 : 1)
+						+ zeroCrossings(x, 1, end);
+			} else {
+				crossings[w] = zeroCrossings(x, start, end);
+			}
+		}
+	}
+
+	/**
+	 * Plain loops, which the JIT may still vectorise
+	 */
+	private static class ScalarKernels extends FeatureKernels {
+		private static final ScalarKernels INSTANCE = new ScalarKernels();
+
+		@Override
+		public String getName() {
+			return SCALAR;
+		}
+
+		@Override
+		public double sumOfSquares(double[] x, int from, int to) {
+			double sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += x[i] * x[i];
+			}
+
+			return sum;
+		}
+
+		@Override
+		public double absoluteSum(double[] x, int from, int to) {
+			double sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += Math.abs(x[i]);
+			}
+
+			return sum;
+		}
+
+		@Override
+		public int zeroCrossings(double[] x, int from, int to) {
+			// 1 for a positive sample, so a crossing is a difference of bits
+			// without a branch to mispredict
+			int crossings = 0;
+			int sampleBeforeIsPositive = x[from - 1] >= 0 ? 1 : 0;
+			for (int i = from; i < to; i++) {
+				int sampleNowIsPositive = x[i] >= 0 ? 1 : 0;
+				crossings += sampleNowIsPositive ^ sampleBeforeIsPositive;
+				sampleBeforeIsPositive = sampleNowIsPositive;
+			}
+
+			return crossings;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that stores the features of many signals as one array per feature,
+ * with the name of each feature and the label of each signal. The values of
+ * a feature are contiguous, so the loops over a feature read sequential
+ * memory without a call or a branch per value, and adding a feature only
+ * adds a column
+ *
+ * @author enzoroiz
+ *
+ */
+public class FeatureMatrix {
+	/**
+	 * Final fields
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Instance fields
+	 */
+	private String[] featureNames;
+	private double[][] columns;
+	private int[] labels;
+	private int rows;
+
+	/**
+	 * Constructor of an empty matrix
+	 *
+	 * @param featureNames
+	 *            one per column
+	 */
+	public FeatureMatrix(String... featureNames) {
+		this.featureNames = featureNames.clone();
+		this.columns = new double[featureNames.length][INITIAL_CAPACITY];
+		this.labels = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Constructor of a matrix with the rows already allocated, all zero and
+	 * labelled 0, to be filled with setRow
+	 *
+	 * @param featureNames
+	 *            one per column
+	 * @param rows
+	 *            number of rows
+	 */
+	public FeatureMatrix(String[] featureNames, int rows) {
+		this(featureNames, new double[featureNames.length][rows],
+				new int[rows]);
+	}
+
+	/**
+	 * Constructor wrapping the arrays given, without copying them
+	 *
+	 * @param featureNames
+	 *            one per column
+	 * @param columns
+	 *            one array per feature, each with one value per row
+	 * @param labels
+	 *            one per row
+	 */
+	public FeatureMatrix(String[] featureNames, double[][] columns,
+			int[] labels) {
+		if (columns.length != featureNames.length) {
+			throw new IllegalArgumentException("Expected "
+					+ featureNames.length + " columns, got " + columns.length);
+		}
+		for (double[] column : columns) {
+			if (column.length != labels.length) {
+				throw new IllegalArgumentException(
+						"Every column needs one value per label");
+			}
+		}
+
+		this.featureNames = featureNames.clone();
+		this.columns = columns;
+		this.labels = labels;
+		this.rows = labels.length;
+	}
+
+	/**
+	 * Adapter from the SignalInfo representation
+	 *
+	 * @param signals
+	 * @param label
+	 *            of every signal
+	 * @return a matrix with the features of SignalProcessing
+	 */
+	public static FeatureMatrix fromSignalInfos(List<SignalInfo> signals,
+			int label) {
+		FeatureMatrix matrix = new FeatureMatrix(
+				SignalProcessing.FEATURE_NAMES);
+		for (SignalInfo signalInfo : signals) {
+			matrix.addRow(signalInfo, label);
+		}
+
+		return matrix;
+	}
+
+	/**
+	 * @param values
+	 *            one per feature
+	 * @param label
+	 * @return the index of the row
+	 */
+	public int addRow(double[] values, int label) {
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("Expected " + columns.length
+					+ " values, got " + values.length);
+		}
+
+		ensureCapacity(rows + 1);
+		for (int m = 0; m < columns.length; m++) {
+			columns[m][rows] = values[m];
+		}
+		labels[rows] = label;
+
+		return rows++;
+	}
+
+	/**
+	 * @param signalInfo
+	 *            with one value per feature of the matrix
+	 * @param label
+	 * @return the index of the row
+	 */
+	public int addRow(SignalInfo signalInfo, int label) {
+		if (signalInfo.size() != columns.length) {
+			throw new IllegalArgumentException("Expected " + columns.length
+					+ " values, got " + signalInfo.size());
+		}
+
+		ensureCapacity(rows + 1);
+		for (int m = 0; m < columns.length; m++) {
+			columns[m][rows] = signalInfo.get(m);
+		}
+		labels[rows] = label;
+
+		return rows++;
+	}
+
+	/**
+	 * @param row
+	 *            already in the matrix
+	 * @param values
+	 *            one per feature
+	 */
+	public void setRow(int row, double[] values) {
+		checkRow(row);
+		if (values.length != columns.length) {
+			throw new IllegalArgumentException("Expected " + columns.length
+					+ " values, got " + values.length);
+		}
+
+		for (int m = 0; m < columns.length; m++) {
+			columns[m][row] = values[m];
+		}
+	}
+
+	/**
+	 * @param row
+	 *            already in the matrix
+	 * @param label
+	 */
+	public void setLabel(int row, int label) {
+		labels[checkRow(row)] = label;
+	}
+
+	/**
+	 * @param capacity
+	 *            number of rows needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= labels.length) {
+			return;
+		}
+
+		int grown = Math.max(capacity, labels.length * 2);
+		for (int m = 0; m < columns.length; m++) {
+			columns[m] = Arrays.copyOf(columns[m], grown);
+		}
+		labels = Arrays.copyOf(labels, grown);
+	}
+
+	/**
+	 * Shrink the arrays to the number of rows, so they can be given out
+	 */
+	private void trim() {
+		if (labels.length == rows) {
+			return;
+		}
+
+		for (int m = 0; m < columns.length; m++) {
+			columns[m] = Arrays.copyOf(columns[m], rows);
+		}
+		labels = Arrays.copyOf(labels, rows);
+	}
+
+	/**
+	 * @param order
+	 *            indexes of the rows to copy, in the order of the new matrix
+	 * @return a matrix with the rows given
+	 */
+	public FeatureMatrix select(int[] order) {
+		double[][] selected = new double[columns.length][order.length];
+		int[] selectedLabels = new int[order.length];
+
+		for (int m = 0; m < columns.length; m++) {
+			double[] column = columns[m];
+			double[] selectedColumn = selected[m];
+			for (int i = 0; i < order.length; i++) {
+				selectedColumn[i] = column[checkRow(order[i])];
+			}
+		}
+		for (int i = 0; i < order.length; i++) {
+			selectedLabels[i] = labels[order[i]];
+		}
+
+		return new FeatureMatrix(featureNames, selected, selectedLabels);
+	}
+
+	/**
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last one
+	 * @return a matrix with a copy of the rows
+	 */
+	public FeatureMatrix slice(int from, int to) {
+		if (from < 0 || to > rows || from > to) {
+			throw new IndexOutOfBoundsException("Invalid slice [" + from
+					+ ", " + to + ") for a matrix of " + rows + " rows");
+		}
+
+		double[][] sliced = new double[columns.length][];
+		for (int m = 0; m < columns.length; m++) {
+			sliced[m] = Arrays.copyOfRange(columns[m], from, to);
+		}
+
+		return new FeatureMatrix(featureNames, sliced, Arrays.copyOfRange(
+				labels, from, to));
+	}
+
+	/**
+	 * @param label
+	 * @return a matrix with the rows of the label, in the same order
+	 */
+	public FeatureMatrix withLabel(int label) {
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			if (labels[i] == label) {
+				count++;
+			}
+		}
+
+		int[] order = new int[count];
+		count = 0;
+		for (int i = 0; i < rows; i++) {
+			if (labels[i] == label) {
+				order[count++] = i;
+			}
+		}
+
+		return select(order);
+	}
+
+	/**
+	 * @param row
+	 * @return the row, if it is in the matrix
+	 */
+	private int checkRow(int row) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row: " + row);
+		}
+
+		return row;
+	}
+
+	/**
+	 * @param row
+	 * @param feature
+	 *            index of the feature
+	 * @return the value of the feature in the row
+	 */
+	public double get(int row, int feature) {
+		return columns[feature][checkRow(row)];
+	}
+
+	/**
+	 * @param row
+	 * @return a copy of the values of the row, one per feature
+	 */
+	public double[] getRow(int row) {
+		checkRow(row);
+		double[] values = new double[columns.length];
+		for (int m = 0; m < columns.length; m++) {
+			values[m] = columns[m][row];
+		}
+
+		return values;
+	}
+
+	/**
+	 * @param row
+	 * @return the label of the row
+	 */
+	public int getLabel(int row) {
+		return labels[checkRow(row)];
+	}
+
+	/**
+	 * @param feature
+	 *            index of the feature
+	 * @return the values of the feature, one per row, shared with the matrix
+	 */
+	public double[] column(int feature) {
+		trim();
+		return columns[feature];
+	}
+
+	/**
+	 * @return one array per feature, shared with the matrix
+	 */
+	public double[][] columns() {
+		trim();
+		return columns;
+	}
+
+	/**
+	 * @return the labels, one per row, shared with the matrix
+	 */
+	public int[] labels() {
+		trim();
+		return labels;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int rows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of features
+	 */
+	public int features() {
+		return columns.length;
+	}
+
+	/**
+	 * @param feature
+	 *            index of the feature
+	 * @return the name of the feature
+	 */
+	public String getFeatureName(int feature) {
+		return featureNames[feature];
+	}
+
+	/**
+	 * @return the names of the features, in the order of the columns
+	 */
+	public String[] getFeatureNames() {
+		return featureNames.clone();
+	}
+
+	/**
+	 * @param row
+	 * @return the values of the row as the SignalInfo toString, e.g.
+	 *         [2.4357, 4.2878, 0.8761]
+	 */
+	public String rowToString(int row) {
+		checkRow(row);
+		StringBuilder text = new StringBuilder("[");
+		for (int m = 0; m < columns.length; m++) {
+			if (m > 0) {
+				text.append(", ");
+			}
+			text.append(columns[m][row]);
+		}
+
+		return text.append("]").toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FeatureMatrix)) {
+			return false;
+		}
+
+		FeatureMatrix matrix = (FeatureMatrix) obj;
+		if (matrix.rows != rows
+				|| !Arrays.equals(matrix.featureNames, featureNames)) {
+			return false;
+		}
+
+		for (int i = 0; i < rows; i++) {
+			if (matrix.labels[i] != labels[i]) {
+				return false;
+			}
+			for (int m = 0; m < columns.length; m++) {
+				if (matrix.columns[m][i] != columns[m][i]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(featureNames) + rows;
+	}
+}
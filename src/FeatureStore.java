@@ -0,0 +1,722 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class that stores the information of the signals in a columnar binary file.
+ * The file starts with a schema, the names of the features, followed by
+ * blocks of rows. Each block has one contiguous column of little-endian
+ * doubles per feature and a column with the label of each row, so a column
+ * is read by memory mapping the file, without parsing. Appending writes a
+ * new block at the end of the file, so several runs can add their rows to the
+ * same file. A reader holds a shared lock on the file until it is closed, so
+ * a run writing the file waits for it and the mapped columns stay valid
+ *
+ * @author enzoroiz
+ *
+ */
+public class FeatureStore implements Closeable {
+	/**
+	 * Final fields
+	 */
+	// "FEAT" in ASCII
+	private static final int MAGIC = 0x46454154;
+	private static final byte VERSION = 1;
+	private static final byte FLOAT64 = 1;
+	// Row count and padding before the columns of a block
+	private static final int BLOCK_HEADER_SIZE = 8;
+	// Bytes of a column written at a time
+	private static final int WRITE_BATCH_SIZE = 64 * 1024;
+
+	/**
+	 * Instance fields
+	 */
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private FileLock lock;
+	private String[] featureNames;
+	private long[] blockOffsets;
+	private int[] blockRows;
+	private long rowCount;
+
+	/**
+	 * Constructor of a reader, given by open
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	private FeatureStore(File file) throws IOException {
+		randomAccessFile = new RandomAccessFile(file, "r");
+		channel = randomAccessFile.getChannel();
+
+		try {
+			// Shared with other readers, but waits for a run writing the file,
+			// so its blocks are complete, and keeps the next one waiting until
+			// this reader is closed
+			lock = channel.lock(0, Long.MAX_VALUE, true);
+			scanBlocks(file);
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the schema and find the blocks of the file
+	 *
+	 * @param file
+	 * @throws IOException
+	 *             if the file is not a feature file
+	 */
+	private void scanBlocks(File file) throws IOException {
+		long size = channel.size();
+		featureNames = readSchema(channel, file);
+		long position = schemaSize(featureNames);
+
+		ArrayList<Long> offsets = new ArrayList<>();
+		ArrayList<Integer> rows = new ArrayList<>();
+		while (position < size) {
+			int blockRowCount = readBlockRows(channel, position);
+			long blockSize = blockSize(featureNames.length, blockRowCount);
+			if (blockRowCount < 0 || position + blockSize > size) {
+				throw new IOException("The file " + file
+						+ " has an incomplete block at byte " + position);
+			}
+
+			offsets.add(position);
+			rows.add(blockRowCount);
+			rowCount += blockRowCount;
+			position += blockSize;
+		}
+
+		blockOffsets = new long[offsets.size()];
+		blockRows = new int[rows.size()];
+		for (int b = 0; b < blockOffsets.length; b++) {
+			blockOffsets[b] = offsets.get(b);
+			blockRows[b] = rows.get(b);
+		}
+	}
+
+	/**
+	 * @param file
+	 *            written by write or append
+	 * @return a reader of the file, to be closed after use, as it keeps the
+	 *         file from being written until then
+	 * @throws IOException
+	 *             if the file cannot be read or is not a feature file
+	 */
+	public static FeatureStore open(File file) throws IOException {
+		return new FeatureStore(file);
+	}
+
+	/**
+	 * Write the rows in a new file, replacing the file if it exists
+	 *
+	 * @param file
+	 * @param featureNames
+	 * @param columns
+	 *            one array per feature, each with one value per row
+	 * @param labels
+	 *            one per row
+	 * @throws IOException
+	 */
+	public static void write(File file, String[] featureNames,
+			double[][] columns, byte[] labels) throws IOException {
+		write(file, featureNames, columns, labels, false);
+	}
+
+	/**
+	 * Write the rows in a new file, as write, unless the file already has
+	 * exactly these rows, so it is not replaced under its readers when
+	 * nothing changed
+	 *
+	 * @param file
+	 * @param featureNames
+	 * @param columns
+	 *            one array per feature, each with one value per row
+	 * @param labels
+	 *            one per row
+	 * @return if the file was written
+	 * @throws IOException
+	 */
+	public static boolean writeIfChanged(File file, String[] featureNames,
+			double[][] columns, byte[] labels) throws IOException {
+		checkColumns(featureNames, columns, labels);
+
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+				FileChannel outputChannel = output.getChannel()) {
+			FileLock lock = outputChannel.lock();
+			try {
+				if (hasRows(outputChannel, featureNames, columns, labels)) {
+					return false;
+				}
+
+				writeLocked(outputChannel, file, featureNames, columns,
+						labels, false);
+				return true;
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * Add the rows at the end of the file, creating it if needed. The features
+	 * must be the same as the ones of the file. The file is locked while the
+	 * rows are written, so concurrent runs can append to it
+	 *
+	 * @param file
+	 * @param featureNames
+	 * @param columns
+	 *            one array per feature, each with one value per row
+	 * @param labels
+	 *            one per row
+	 * @throws IOException
+	 */
+	public static void append(File file, String[] featureNames,
+			double[][] columns, byte[] labels) throws IOException {
+		write(file, featureNames, columns, labels, true);
+	}
+
+	/**
+	 * Write the rows of the matrix in a new file, replacing the file if it
+	 * exists
+	 *
+	 * @param file
+	 * @param matrix
+	 *            with labels that fit in a byte
+	 * @throws IOException
+	 */
+	public static void write(File file, FeatureMatrix matrix)
+			throws IOException {
+		write(file, matrix.getFeatureNames(), matrix.columns(),
+				byteLabels(matrix), false);
+	}
+
+	/**
+	 * Write the rows of the matrix in a new file, as writeIfChanged
+	 *
+	 * @param file
+	 * @param matrix
+	 *            with labels that fit in a byte
+	 * @return if the file was written
+	 * @throws IOException
+	 */
+	public static boolean writeIfChanged(File file, FeatureMatrix matrix)
+			throws IOException {
+		return writeIfChanged(file, matrix.getFeatureNames(),
+				matrix.columns(), byteLabels(matrix));
+	}
+
+	/**
+	 * Add the rows of the matrix at the end of the file, as append
+	 *
+	 * @param file
+	 * @param matrix
+	 *            with labels that fit in a byte
+	 * @throws IOException
+	 */
+	public static void append(File file, FeatureMatrix matrix)
+			throws IOException {
+		write(file, matrix.getFeatureNames(), matrix.columns(),
+				byteLabels(matrix), true);
+	}
+
+	/**
+	 * @param matrix
+	 * @return the labels of the matrix as bytes
+	 */
+	private static byte[] byteLabels(FeatureMatrix matrix) {
+		int[] labels = matrix.labels();
+		byte[] bytes = new byte[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i] != (byte) labels[i]) {
+				throw new IllegalArgumentException("The label " + labels[i]
+						+ " does not fit in a byte");
+			}
+			bytes[i] = (byte) labels[i];
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * @param file
+	 * @param featureNames
+	 * @param columns
+	 * @param labels
+	 * @param append
+	 *            if the rows are added to the existing ones
+	 * @throws IOException
+	 */
+	private static void write(File file, String[] featureNames,
+			double[][] columns, byte[] labels, boolean append)
+			throws IOException {
+		checkColumns(featureNames, columns, labels);
+
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+				FileChannel outputChannel = output.getChannel()) {
+			FileLock lock = outputChannel.lock();
+			try {
+				writeLocked(outputChannel, file, featureNames, columns,
+						labels, append);
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * @param featureNames
+	 * @param columns
+	 *            one per feature
+	 * @param labels
+	 *            as many as values in each column
+	 */
+	private static void checkColumns(String[] featureNames,
+			double[][] columns, byte[] labels) {
+		if (columns.length != featureNames.length) {
+			throw new IllegalArgumentException("Expected "
+					+ featureNames.length + " columns, got " + columns.length);
+		}
+		for (double[] column : columns) {
+			if (column.length != labels.length) {
+				throw new IllegalArgumentException(
+						"Every column needs one value per label");
+			}
+		}
+	}
+
+	/**
+	 * @param channel
+	 *            locked by the caller
+	 * @param featureNames
+	 * @param columns
+	 * @param labels
+	 * @return if the file has the features and a single block with exactly
+	 *         the rows given
+	 * @throws IOException
+	 */
+	private static boolean hasRows(FileChannel channel, String[] featureNames,
+			double[][] columns, byte[] labels) throws IOException {
+		ByteBuffer schema = encodeSchema(featureNames);
+		long position = schema.capacity();
+		if (channel.size() != position
+				+ blockSize(featureNames.length, labels.length)) {
+			return false;
+		}
+
+		ByteBuffer written = read(channel, 0, schema.capacity());
+		written.position(0);
+		if (!written.equals(schema)
+				|| readBlockRows(channel, position) != labels.length) {
+			return false;
+		}
+		position += BLOCK_HEADER_SIZE;
+
+		// Compared bit by bit, as -0.0 == 0.0 but they are written apart
+		for (double[] column : columns) {
+			ByteBuffer values = read(channel, position, 8 * column.length);
+			for (int i = 0; i < column.length; i++) {
+				long bits = Double.doubleToRawLongBits(values.getDouble(8 * i));
+				if (bits != Double.doubleToRawLongBits(column[i])) {
+					return false;
+				}
+			}
+			position += 8L * column.length;
+		}
+
+		ByteBuffer bytes = read(channel, position, labels.length);
+		for (int i = 0; i < labels.length; i++) {
+			if (bytes.get(i) != labels[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param outputChannel
+	 *            locked by the caller
+	 * @param file
+	 * @param featureNames
+	 * @param columns
+	 * @param labels
+	 * @param append
+	 *            if the rows are added to the existing ones
+	 * @throws IOException
+	 */
+	private static void writeLocked(FileChannel outputChannel, File file,
+			String[] featureNames, double[][] columns, byte[] labels,
+			boolean append) throws IOException {
+		long end;
+		if (append && outputChannel.size() > 0) {
+			String[] schema = readSchema(outputChannel, file);
+			if (!Arrays.equals(schema, featureNames)) {
+				throw new IOException("The file " + file
+						+ " has the features " + Arrays.toString(schema));
+			}
+			end = completeBlocksEnd(outputChannel, schema);
+		} else {
+			end = writeSchema(outputChannel, featureNames);
+		}
+
+		// Drop a block left incomplete by an interrupted run
+		outputChannel.truncate(end);
+		outputChannel.position(end);
+		writeBlock(outputChannel, columns, labels);
+	}
+
+	/**
+	 * @param channel
+	 * @param featureNames
+	 * @return the size of the schema written
+	 * @throws IOException
+	 */
+	private static long writeSchema(FileChannel channel, String[] featureNames)
+			throws IOException {
+		ByteBuffer bytes = encodeSchema(featureNames);
+
+		channel.position(0);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+
+		return bytes.capacity();
+	}
+
+	/**
+	 * @param featureNames
+	 * @return the schema as written at the start of the file
+	 */
+	private static ByteBuffer encodeSchema(String[] featureNames) {
+		int size = schemaSize(featureNames);
+		ByteBuffer bytes = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(MAGIC);
+		bytes.put(VERSION);
+		bytes.put(FLOAT64);
+		bytes.putShort((short) 0);
+		bytes.putInt(featureNames.length);
+		bytes.putInt(size);
+		for (String name : featureNames) {
+			byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+			bytes.putShort((short) encoded.length);
+			bytes.put(encoded);
+		}
+		bytes.position(0);
+
+		return bytes;
+	}
+
+	/**
+	 * @param featureNames
+	 * @return the size of the schema, a multiple of 8 so the columns are
+	 *         aligned
+	 */
+	private static int schemaSize(String[] featureNames) {
+		int size = 16;
+		for (String name : featureNames) {
+			size += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		return (size + 7) & ~7;
+	}
+
+	/**
+	 * @param channel
+	 * @param file
+	 *            used in the error messages
+	 * @return the names of the features
+	 * @throws IOException
+	 *             if the file is not a feature file
+	 */
+	private static String[] readSchema(FileChannel channel, File file)
+			throws IOException {
+		ByteBuffer header = read(channel, 0, 16);
+		if (header == null || header.getInt(0) != MAGIC
+				|| header.get(4) != VERSION || header.get(5) != FLOAT64) {
+			throw new IOException("The file " + file
+					+ " is not a feature file");
+		}
+
+		int features = header.getInt(8);
+		int size = header.getInt(12);
+		ByteBuffer schema = read(channel, 0, size);
+		if (features < 0 || schema == null) {
+			throw new IOException("The file " + file
+					+ " has an incomplete schema");
+		}
+
+		String[] featureNames = new String[features];
+		schema.position(16);
+		for (int m = 0; m < features; m++) {
+			byte[] encoded = new byte[schema.getShort()];
+			schema.get(encoded);
+			featureNames[m] = new String(encoded, StandardCharsets.UTF_8);
+		}
+
+		return featureNames;
+	}
+
+	/**
+	 * @param channel
+	 * @param schema
+	 * @return the position after the last complete block
+	 * @throws IOException
+	 */
+	private static long completeBlocksEnd(FileChannel channel, String[] schema)
+			throws IOException {
+		long size = channel.size();
+		long position = schemaSize(schema);
+
+		while (position < size) {
+			int rows = readBlockRows(channel, position);
+			long blockSize = blockSize(schema.length, rows);
+			if (rows < 0 || position + blockSize > size) {
+				break;
+			}
+			position += blockSize;
+		}
+
+		return position;
+	}
+
+	/**
+	 * @param channel
+	 * @param position
+	 *            of the block
+	 * @return the number of rows of the block, -1 if its header is incomplete
+	 * @throws IOException
+	 */
+	private static int readBlockRows(FileChannel channel, long position)
+			throws IOException {
+		ByteBuffer header = read(channel, position, BLOCK_HEADER_SIZE);
+		return header == null ? -1 : header.getInt(0);
+	}
+
+	/**
+	 * @param features
+	 * @param rows
+	 * @return the size of a block, a multiple of 8
+	 */
+	private static long blockSize(int features, int rows) {
+		return BLOCK_HEADER_SIZE + 8L * features * rows + ((rows + 7) & ~7);
+	}
+
+	/**
+	 * @param channel
+	 * @param position
+	 * @param size
+	 * @return the bytes read, null if the file ends before
+	 * @throws IOException
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int size)
+			throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(size).order(
+				ByteOrder.LITTLE_ENDIAN);
+		while (bytes.hasRemaining()) {
+			if (channel.read(bytes, position + bytes.position()) < 0) {
+				return null;
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Write one block at the position of the channel, a batch of each column
+	 * at a time
+	 *
+	 * @param channel
+	 * @param columns
+	 * @param labels
+	 * @throws IOException
+	 */
+	private static void writeBlock(FileChannel channel, double[][] columns,
+			byte[] labels) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocateDirect(WRITE_BATCH_SIZE).order(
+				ByteOrder.LITTLE_ENDIAN);
+
+		bytes.putInt(labels.length);
+		bytes.putInt(0);
+
+		for (double[] column : columns) {
+			for (int i = 0; i < column.length;) {
+				int count = Math.min(bytes.remaining() / 8, column.length - i);
+				if (count == 0) {
+					flush(channel, bytes);
+					continue;
+				}
+
+				bytes.asDoubleBuffer().put(column, i, count);
+				bytes.position(bytes.position() + 8 * count);
+				i += count;
+			}
+		}
+
+		// Labels padded to 8 bytes
+		int padded = (labels.length + 7) & ~7;
+		for (int i = 0; i < padded; i++) {
+			if (!bytes.hasRemaining()) {
+				flush(channel, bytes);
+			}
+			bytes.put(i < labels.length ? labels[i] : 0);
+		}
+
+		flush(channel, bytes);
+	}
+
+	/**
+	 * @param channel
+	 * @param bytes
+	 *            written and then cleared
+	 * @throws IOException
+	 */
+	private static void flush(FileChannel channel, ByteBuffer bytes)
+			throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * @return the names of the features, in the order of the columns
+	 */
+	public String[] getFeatureNames() {
+		return featureNames.clone();
+	}
+
+	/**
+	 * @return the number of rows of all the blocks
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of blocks, one per write or append
+	 */
+	public int getBlockCount() {
+		return blockOffsets.length;
+	}
+
+	/**
+	 * @param block
+	 * @param feature
+	 *            index of the feature
+	 * @return a read-only view of the column in the mapped file, valid until
+	 *         the reader is closed
+	 * @throws IOException
+	 */
+	public DoubleBuffer column(int block, int feature) throws IOException {
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+				blockOffsets[block] + BLOCK_HEADER_SIZE + 8L * feature
+						* blockRows[block], 8L * blockRows[block]);
+
+		return bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+
+	/**
+	 * @param feature
+	 *            index of the feature
+	 * @return the values of the feature in every block
+	 * @throws IOException
+	 */
+	public double[] readColumn(int feature) throws IOException {
+		double[] values = new double[checkedRowCount()];
+		int position = 0;
+
+		for (int b = 0; b < blockOffsets.length; b++) {
+			column(b, feature).get(values, position, blockRows[b]);
+			position += blockRows[b];
+		}
+
+		return values;
+	}
+
+	/**
+	 * @param featureName
+	 * @return the values of the feature in every block
+	 * @throws IOException
+	 */
+	public double[] readColumn(String featureName) throws IOException {
+		int feature = Arrays.asList(featureNames).indexOf(featureName);
+		if (feature < 0) {
+			throw new IllegalArgumentException("Unknown feature "
+					+ featureName);
+		}
+
+		return readColumn(feature);
+	}
+
+	/**
+	 * @return the label of every row
+	 * @throws IOException
+	 */
+	public byte[] readLabels() throws IOException {
+		byte[] labels = new byte[checkedRowCount()];
+		int position = 0;
+
+		for (int b = 0; b < blockOffsets.length; b++) {
+			MappedByteBuffer bytes = channel.map(
+					FileChannel.MapMode.READ_ONLY, blockOffsets[b]
+							+ BLOCK_HEADER_SIZE + 8L * featureNames.length
+							* blockRows[b], blockRows[b]);
+			bytes.get(labels, position, blockRows[b]);
+			position += blockRows[b];
+		}
+
+		return labels;
+	}
+
+	/**
+	 * @return every row of the file, with its features and label
+	 * @throws IOException
+	 */
+	public FeatureMatrix readMatrix() throws IOException {
+		double[][] columns = new double[featureNames.length][];
+		for (int m = 0; m < featureNames.length; m++) {
+			columns[m] = readColumn(m);
+		}
+
+		byte[] bytes = readLabels();
+		int[] labels = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			labels[i] = bytes[i];
+		}
+
+		return new FeatureMatrix(featureNames, columns, labels);
+	}
+
+	/**
+	 * @return the number of rows, if they fit in an array
+	 */
+	private int checkedRowCount() {
+		if (rowCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException(
+					"Too many rows to read in one array, read the blocks");
+		}
+
+		return (int) rowCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// Closing the channel also releases the lock
+		randomAccessFile.close();
+	}
+}
@@ -1,7 +1,12 @@
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
 
 /**
  * Class that helps in reading files.
@@ -15,15 +20,60 @@ public class FileReader {
 	 */
 	private File filesPath;
 	private File[] filesToRead;
+	private SampleCache sampleCache;
+
+	// Bytes read at a time when streaming a file
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+	// Powers of ten exactly represented as doubles
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+		}
+	}
+
+	/**
+	 * Receives the samples of a file streamed in chunks
+	 */
+	public interface SampleConsumer {
+		/**
+		 * @param samples
+		 *            array reused for the next chunk, so it must not be kept
+		 * @param length
+		 *            number of samples of the chunk in the array
+		 * @throws IOException
+		 */
+		void accept(double[] samples, int length) throws IOException;
+	}
 
 	/**
 	 * Construtor informing the entryPath List the files of the given path or
-	 * throws an error if it is not a directory
+	 * throws an error if it is not a directory. The samples read are cached
+	 * in binary files inside the .cache directory of the path
 	 * 
 	 * @param entryPath
 	 */
 	public FileReader(String entryPath) {
+		this(entryPath, true);
+	}
+
+	/**
+	 * Construtor informing the entryPath List the files of the given path or
+	 * throws an error if it is not a directory
+	 * 
+	 * @param entryPath
+	 * @param useCache
+	 *            if the samples read are cached in binary files inside the
+	 *            .cache directory of the path
+	 */
+	public FileReader(String entryPath, boolean useCache) {
 		filesPath = new File(entryPath);
+		if (useCache) {
+			sampleCache = new SampleCache(new File(filesPath, ".cache"));
+		}
+
 		try {
 			if (!filesPath.isDirectory()) {
 				throw new IOException("The path is not valid. ");
@@ -39,54 +89,337 @@ public class FileReader {
 	 * Read the files listed in the constructor
 	 * 
 	 * @return the samples to be processed as an matrix
+	 * @throws IOException
+	 *             if a file cannot be read or has a malformed line
 	 */
-	public ArrayList<ArrayList<Double>> readAllFiles() {
-		// Read the silence ones first
+	public ArrayList<ArrayList<Double>> readAllFiles() throws IOException {
 		ArrayList<ArrayList<Double>> samples = new ArrayList<>();
+		for (SignalBuffer signal : readAllSignals()) {
+			samples.add(signal.toList());
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Read the files listed in the constructor
+	 * 
+	 * @return the samples to be processed as primitive buffers
+	 * @throws IOException
+	 *             if a file cannot be read or has a malformed line
+	 */
+	public ArrayList<SignalBuffer> readAllSignals() throws IOException {
+		ArrayList<SignalBuffer> samples = new ArrayList<>();
+		for (File file : getSampleFiles()) {
+			samples.add(readSample(file));
+		}
+
+		return samples;
+	}
+
+	/**
+	 * List the files to read in a single pass over the directory: the silence
+	 * ones first and then the speech ones
+	 * 
+	 * @return the sample files in the order they are processed
+	 */
+	public ArrayList<File> getSampleFiles() {
+		ArrayList<File> silenceFiles = new ArrayList<>();
+		ArrayList<File> speechFiles = new ArrayList<>();
+
 		for (File file : filesToRead) {
-			if (!file.isDirectory()
-					&& file.getName().toLowerCase().contains("silence")) {
-				samples.add(readFile(file));
+			if (file.isDirectory()) {
+				continue;
+			}
+
+			String name = file.getName().toLowerCase();
+			if (name.contains("silence")) {
+				silenceFiles.add(file);
+			}
+			if (name.contains("speech")) {
+				speechFiles.add(file);
 			}
 		}
 
-		// And then the speech ones
-		for (File file : filesToRead) {
-			if (!file.isDirectory()
-					&& file.getName().toLowerCase().contains("speech")) {
-				samples.add(readFile(file));
+		silenceFiles.addAll(speechFiles);
+		return silenceFiles;
+	}
+
+	/**
+	 * @return the directory of the files to read
+	 */
+	public File getFilesPath() {
+		return filesPath;
+	}
+
+	/**
+	 * Read the file passed as parameter through the cache, if it is used
+	 * 
+	 * @param file
+	 * @return buffer containing information read
+	 * @throws IOException
+	 *             if the file cannot be read or has a malformed line
+	 */
+	public SignalBuffer readSample(File file) throws IOException {
+		if (sampleCache != null) {
+			return sampleCache.read(file);
+		}
+
+		return readFile(file);
+	}
+
+	/**
+	 * Read the file passed as parameter and store the information in a
+	 * primitive buffer. The file is memory mapped and each line, containing one
+	 * integer or decimal number, is decoded straight from its bytes. Blank
+	 * lines are ignored
+	 * 
+	 * @param file
+	 * @return buffer containing information read
+	 * @throws IOException
+	 *             if the file cannot be read or a line is not a number
+	 */
+	public static SignalBuffer readFile(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The file " + file + " is too large");
 			}
+
+			int size = (int) channel.size();
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, size);
+
+			return parseSamples(bytes, size, file);
 		}
+	}
 
-		return samples;
+	/**
+	 * Read the file passed as parameter in chunks of samples, keeping in
+	 * memory only one chunk and a small buffer of bytes whatever the size of
+	 * the file, e.g. for recordings of several hours
+	 * 
+	 * @param file
+	 * @param chunkSize
+	 *            maximum number of samples given to the consumer at a time
+	 * @param consumer
+	 *            receives the chunks in the order of the file
+	 * @return the number of samples read
+	 * @throws IOException
+	 *             if the file cannot be read or a line is not a number
+	 */
+	public static long streamFile(File file, int chunkSize,
+			SampleConsumer consumer) throws IOException {
+		double[] chunk = new double[chunkSize];
+		int samples = 0;
+		long total = 0;
+		int line = 0;
+		// Offset in the file of the first byte of the buffer
+		long bufferOffset = 0;
+		ByteBuffer bytes = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+
+		try (FileInputStream input = new FileInputStream(file);
+				FileChannel channel = input.getChannel()) {
+			boolean endOfFile = false;
+
+			while (!endOfFile) {
+				endOfFile = channel.read(bytes) < 0;
+				int end = bytes.position();
+				int position = 0;
+
+				while (position < end) {
+					int lineStart = position;
+					int lineEnd = position;
+					while (lineEnd < end && bytes.get(lineEnd) != '\n') {
+						lineEnd++;
+					}
+
+					// The rest of the line comes with the next read
+					if (lineEnd == end && !endOfFile) {
+						break;
+					}
+					position = lineEnd + 1;
+					line++;
+
+					while (lineStart < lineEnd && isBlank(bytes.get(lineStart))) {
+						lineStart++;
+					}
+					while (lineEnd > lineStart
+							&& isBlank(bytes.get(lineEnd - 1))) {
+						lineEnd--;
+					}
+
+					if (lineStart == lineEnd) {
+						continue;
+					}
+
+					chunk[samples++] = parseNumber(bytes, lineStart, lineEnd,
+							file, line, bufferOffset + lineStart);
+					if (samples == chunkSize) {
+						consumer.accept(chunk, samples);
+						total += samples;
+						samples = 0;
+					}
+				}
+
+				if (!endOfFile) {
+					if (position == 0 && end == bytes.capacity()) {
+						throw new IOException("Line " + (line + 1) + " of "
+								+ file + " is too long");
+					}
+
+					// Move the incomplete line to the start of the buffer
+					bytes.flip();
+					bytes.position(position);
+					bytes.compact();
+					bufferOffset += position;
+				}
+			}
+		}
+
+		if (samples > 0) {
+			consumer.accept(chunk, samples);
+			total += samples;
+		}
+
+		return total;
 	}
 
 	/**
-	 * Read the file passed as parameter and store the information in an array
-	 * list
+	 * Decode one number per line
 	 * 
+	 * @param bytes
+	 *            content of the file
+	 * @param size
+	 *            number of bytes
 	 * @param file
-	 * @return array list containing information read
+	 *            used in the error messages
+	 * @return buffer containing the numbers read
+	 * @throws IOException
+	 *             if a line is not a number
 	 */
-	private ArrayList<Double> readFile(File file) {
-		ArrayList<Double> sample = new ArrayList<Double>();
+	private static SignalBuffer parseSamples(MappedByteBuffer bytes, int size,
+			File file) throws IOException {
+		// Each line has at least one digit and a line break
+		double[] sample = new double[Math.max(16, size / 5)];
+		int samples = 0;
+		int position = 0;
+		int line = 0;
 
-		try {
-			double x;
-			Scanner scanner = new Scanner(file);
-			sample.add(Double.valueOf(String.valueOf(scanner.nextLine())));
-			while (scanner.hasNextLine()) {
-				x = Double.valueOf(String.valueOf(scanner.nextLine()));
-				sample.add(x);
+		while (position < size) {
+			int lineStart = position;
+			int lineEnd = position;
+			while (lineEnd < size && bytes.get(lineEnd) != '\n') {
+				lineEnd++;
+			}
+			position = lineEnd + 1;
+			line++;
+
+			// Trim spaces, tabs and the carriage return of the line
+			while (lineStart < lineEnd && isBlank(bytes.get(lineStart))) {
+				lineStart++;
+			}
+			while (lineEnd > lineStart && isBlank(bytes.get(lineEnd - 1))) {
+				lineEnd--;
 			}
 
-			scanner.close();
+			if (lineStart == lineEnd) {
+				continue;
+			}
 
-		} catch (Exception e) {
-			e.printStackTrace();
+			if (samples == sample.length) {
+				sample = Arrays.copyOf(sample, samples * 2);
+			}
+
+			sample[samples++] = parseNumber(bytes, lineStart, lineEnd, file,
+					line, lineStart);
+		}
+
+		return new SignalBuffer(sample, 0, samples);
+	}
+
+	/**
+	 * Decode an integer or a decimal number. Numbers with up to 15 digits and
+	 * 22 decimal places are decoded with a single correctly rounded division,
+	 * the others are left to Double.parseDouble
+	 * 
+	 * @param bytes
+	 * @param start
+	 *            first byte of the number
+	 * @param end
+	 *            byte after the number
+	 * @param file
+	 * @param line
+	 *            number of the line in the file
+	 * @param offset
+	 *            of the first byte in the file
+	 * @return the number
+	 * @throws IOException
+	 *             if the bytes are not a number
+	 */
+	private static double parseNumber(ByteBuffer bytes, int start, int end,
+			File file, int line, long offset) throws IOException {
+		int i = start;
+		boolean negative = false;
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = 0;
+		boolean point = false;
+		boolean hasDigits = false;
+
+		byte b = bytes.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
 		}
 
-		return sample;
+		for (; i < end; i++) {
+			b = bytes.get(i);
+			if (b >= '0' && b <= '9') {
+				hasDigits = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+				}
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (point) {
+					decimals++;
+				}
+			} else if (b == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+
+		if (hasDigits && i == end && digits <= 15 && decimals <= 22) {
+			double value = mantissa / POWERS_OF_TEN[decimals];
+			return negative ? -value : value;
+		}
+
+		// Exponents, long numbers or malformed lines
+		byte[] text = new byte[end - start];
+		for (int j = 0; j < text.length; j++) {
+			text[j] = bytes.get(start + j);
+		}
+		String number = new String(text, "US-ASCII");
+
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed sample \"" + number + "\" in "
+					+ file + " at line " + line + ", byte offset " + offset);
+		}
+	}
+
+	/**
+	 * @param b
+	 *            byte of the file
+	 * @return if the byte is a space, a tab or a carriage return
+	 */
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+/**
+ * Class that stores a normal distribution fitted to some data. The constants
+ * of the density are computed once, so each evaluation costs O(1)
+ *
+ * @author enzoroiz
+ *
+ */
+public class GaussianModel {
+	/**
+	 * Instance fields
+	 */
+	private double mean;
+	private double variance;
+	// 1 / sqrt(2 * PI * variance)
+	private double normalization;
+	// log(1 / sqrt(2 * PI * variance))
+	private double logNormalization;
+	// 1 / (2 * variance)
+	private double inverseTwoVariance;
+
+	/**
+	 * Constructor
+	 *
+	 * @param mean
+	 * @param variance
+	 */
+	public GaussianModel(double mean, double variance) {
+		this.mean = mean;
+		this.variance = variance;
+		this.normalization = 1 / Math.sqrt(2 * Math.PI * variance);
+		this.logNormalization = -0.5 * Math.log(2 * Math.PI * variance);
+		this.inverseTwoVariance = 1 / (2 * variance);
+	}
+
+	/**
+	 * @param parameter
+	 *            to be analysed
+	 * @return the normal or the Gaussian distribution given the mean and the
+	 *         variance
+	 */
+	public double density(double parameter) {
+		double difference = parameter - mean;
+		return normalization
+				* Math.exp(-difference * difference * inverseTwoVariance);
+	}
+
+	/**
+	 * @param parameter
+	 *            to be analysed
+	 * @return the natural log of the density
+	 */
+	public double logDensity(double parameter) {
+		double difference = parameter - mean;
+		return logNormalization - difference * difference * inverseTwoVariance;
+	}
+
+	/**
+	 * @return the mean
+	 */
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * @return the variance
+	 */
+	public double getVariance() {
+		return variance;
+	}
+
+	/**
+	 * @return the log of 1 / sqrt(2 * PI * variance)
+	 */
+	public double getLogNormalization() {
+		return logNormalization;
+	}
+
+	/**
+	 * @return 1 / (2 * variance)
+	 */
+	public double getInverseTwoVariance() {
+		return inverseTwoVariance;
+	}
+
+	@Override
+	public String toString() {
+		return ("Mean: " + mean + " Variance: " + variance);
+	}
+}
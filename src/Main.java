@@ -1,5 +1,14 @@
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 
 /**
  * Main class of the program Initialise and executes everything needed to write
@@ -7,17 +16,62 @@ import java.util.ArrayList;
  * write a .dat file with the information of the extracted signals and computes
  * the accuracy on predicting sample silence or speech
  * 
+ * It also has a train mode, that saves the model trained with all the
+ * samples, and a classify mode, that loads it and classifies new files
+ * without writing any report nor cross-validating:
+ * 
+ * Main train <samples directory> <model file> [threads]
+ * Main classify <model file> <file or directory> [watch]
+ * 
+ * The segment mode loads the model and prints the speech segments of a long
+ * recording as they are found, reading it in chunks:
+ * 
+ * Main segment <model file> <recording> [sample rate] [hangover frames]
+ * 
  * @author enzoroiz
  */
 public class Main {
 	private final static int k = 10;
+	private final static int AUDIO_SIZE_IN_MS = 300;
+	private final static int WINDOW_SIZE = 30;
+	private final static String TRAIN = "train";
+	private final static String CLASSIFY = "classify";
+	private final static String WATCH = "watch";
+	private final static String SEGMENT = "segment";
+	private final static String XLSX = "assets/Results.xlsx";
+	private final static String FEATURES = "assets/Signal Information.features";
+	private final static String FEATURE_CACHE = ".cache/features";
+	private final static int MAX_CACHED_FEATURES = 100000;
+	private final static int SAMPLE_RATE = 8000;
+	private final static int HANGOVER_FRAMES = 2;
+	private final static int CHUNK_SIZE = 8192;
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(TRAIN)) {
+			train(args);
+			return;
+		}
+
+		if (args.length > 0 && args[0].equals(CLASSIFY)) {
+			classify(args);
+			return;
+		}
+
+		if (args.length > 0 && args[0].equals(SEGMENT)) {
+			segment(args);
+			return;
+		}
+
 		String entry;
+		int parallelism = 1;
 
-		// Receive command line parameters
+		// Receive command line parameters: the directory of the samples and,
+		// optionally, the number of threads used to process them
 		try {
 			entry = args[0];
+			if (args.length > 1) {
+				parallelism = Integer.parseInt(args[1]);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("Parameters problem");
@@ -25,23 +79,23 @@ public class Main {
 			return;
 		}
 
-		// Read all files in the specified directory and receive a matrix of the
-		// samples read as a return
+		// Read all files in the specified directory and process the signal
+		// information for all the read files, silence ones first
 		FileReader fileReader = new FileReader(entry);
-		ArrayList<ArrayList<Double>> samples = fileReader.readAllFiles();
+		FeatureMatrix signalsInfo;
+		try {
+			signalsInfo = processAllFiles(fileReader, parallelism);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			System.exit(0);
+			return;
+		}
 
 		// Split the data into silence and speech signals
-		ArrayList<ArrayList<Double>> silenceSignals = new ArrayList<>();
-		ArrayList<ArrayList<Double>> speechSignals = new ArrayList<>();
-		silenceSignals.addAll(samples.subList(0, samples.size() / 2));
-		speechSignals
-				.addAll(samples.subList(samples.size() / 2, samples.size()));
-
-		// Process the signal information for all the read files
-		ArrayList<SignalInfo> silenceSignalsInfo = SignalProcessing
-				.processSignals(silenceSignals, 300, 30);
-		ArrayList<SignalInfo> speechSignalsInfo = SignalProcessing
-				.processSignals(speechSignals, 300, 30);
+		FeatureMatrix silenceSignalsInfo = signalsInfo
+				.withLabel(NaiveBayesModel.SILENCE);
+		FeatureMatrix speechSignalsInfo = signalsInfo
+				.withLabel(NaiveBayesModel.SPEECH);
 
 		// Write an Excel sheet containing the information extracted from the
 		// given signals
@@ -56,6 +110,26 @@ public class Main {
 			e.printStackTrace();
 		}
 
+		// The same information streamed to an xlsx file, which has no limit
+		// of 65536 rows
+		try (StreamingExcelWriter xlsxWriter = new StreamingExcelWriter(
+				new File(XLSX), "Results")) {
+			int features = signalsInfo.features();
+			Object[] header = new Object[2 * features];
+			header[0] = "SILENCE";
+			header[features] = "SPEECH";
+			xlsxWriter.writeRow(header);
+			for (int m = 0; m < features; m++) {
+				header[m] = header[features + m] = signalsInfo
+						.getFeatureName(m);
+			}
+			xlsxWriter.writeRow(header);
+			xlsxWriter.writeDataInColumns(Arrays.asList(silenceSignalsInfo,
+					speechSignalsInfo));
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+
 		// Write a file .dat containing the information extracted from the given
 		// signals
 		OutputWriter outputWriter = new OutputWriter();
@@ -65,10 +139,19 @@ public class Main {
 		outputWriter.writeFile(speechSignalsInfo);
 		outputWriter.finishWriting();
 
+		// The same information in a columnar binary file, read back by memory
+		// mapping it, only replaced when the features changed
+		try {
+			if (FeatureStore.writeIfChanged(new File(FEATURES), signalsInfo)) {
+				System.out.println("Features written to " + FEATURES);
+			}
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+
 		// Compute the acuuracy in a cross-validation fashion, using K-fold
 		// validation with K=10
-		Classifier classifier = new Classifier(silenceSignalsInfo,
-				speechSignalsInfo, k);
+		Classifier classifier = new Classifier(signalsInfo, k);
 		//classifier.test();
 
 		// Do the same described above, but shuffle the samples and test it "n"
@@ -76,4 +159,340 @@ public class Main {
 		 classifier.test();
 
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Read and process all the sample files. The information of the files
+	 * processed in previous runs, with the same content and parameters, is
+	 * read from a FeatureCache. With more than one thread, the other files
+	 * are read and processed at the same time by a SignalPipeline
+	 * 
+	 * @param fileReader
+	 * @param parallelism
+	 *            number of threads
+	 * @return the information of each signal, in the order of the files,
+	 *         the first half labelled as silence and the rest as speech
+	 * @throws IOException
+	 *             if a file cannot be read or has a malformed line
+	 */
+	private static FeatureMatrix processAllFiles(
+			FileReader fileReader, int parallelism) throws IOException {
+		long start = System.nanoTime();
+		FeatureCache featureCache = new FeatureCache(new File(
+				fileReader.getFilesPath(), FEATURE_CACHE), MAX_CACHED_FEATURES,
+				SignalProcessing.FEATURE_NAMES);
+
+		ArrayList<File> files = fileReader.getSampleFiles();
+		FeatureMatrix features = new FeatureMatrix(
+				SignalProcessing.FEATURE_NAMES, files.size());
+		String[] keys = new String[files.size()];
+		ArrayList<Integer> missing = new ArrayList<>();
+		ArrayList<File> missingFiles = new ArrayList<>();
+
+		for (int i = 0; i < files.size(); i++) {
+			features.setLabel(i, i < files.size() / 2 ? NaiveBayesModel.SILENCE
+					: NaiveBayesModel.SPEECH);
+			keys[i] = featureCache.key(files.get(i), AUDIO_SIZE_IN_MS,
+					WINDOW_SIZE);
+			double[] cached = featureCache.get(keys[i]);
+			if (cached == null) {
+				missing.add(i);
+				missingFiles.add(files.get(i));
+			} else {
+				features.setRow(i, cached);
+			}
+		}
+
+		FeatureMatrix processed;
+		if (parallelism <= 1) {
+			processed = new FeatureMatrix(SignalProcessing.FEATURE_NAMES,
+					missingFiles.size());
+			for (int j = 0; j < missingFiles.size(); j++) {
+				SignalBuffer sample = fileReader.readSample(missingFiles
+						.get(j));
+				new SignalProcessing(sample, AUDIO_SIZE_IN_MS).extractFeatures(
+						WINDOW_SIZE, processed, j);
+			}
+		} else {
+			processed = new SignalPipeline(parallelism, parallelism,
+					2 * parallelism).process(fileReader, missingFiles,
+					AUDIO_SIZE_IN_MS, WINDOW_SIZE);
+		}
+
+		for (int j = 0; j < missing.size(); j++) {
+			int i = missing.get(j);
+			double[] values = processed.getRow(j);
+			features.setRow(i, values);
+			featureCache.put(keys[i], values);
+		}
+		featureCache.evict();
+
+		if (parallelism > 1 || !missing.isEmpty()) {
+			System.out.println("Read and processed " + missing.size() + " of "
+					+ files.size() + " files in "
+					+ (System.nanoTime() - start) / 1000000 + " ms with "
+					+ parallelism + " threads");
+		}
+
+		return features;
+	}
+
+	/**
+	 * Train the model with all the samples of a directory and save it
+	 * 
+	 * @param args
+	 *            train, the samples directory, the model file and optionally
+	 *            the number of threads
+	 */
+	private static void train(String[] args) {
+		String entry;
+		File modelFile;
+		int parallelism = 1;
+
+		try {
+			entry = args[1];
+			modelFile = new File(args[2]);
+			if (args.length > 3) {
+				parallelism = Integer.parseInt(args[3]);
+			}
+		} catch (Exception e) {
+			System.out.println("Usage: Main " + TRAIN
+					+ " <samples directory> <model file> [threads]");
+			System.exit(0);
+			return;
+		}
+
+		try {
+			FeatureMatrix signalsInfo = processAllFiles(new FileReader(entry),
+					parallelism);
+
+			NaiveBayesModel model = new Classifier(signalsInfo, k).train();
+			model.setExtraction(AUDIO_SIZE_IN_MS, WINDOW_SIZE);
+			model.save(modelFile);
+			System.out.println("Model trained with " + signalsInfo.rows()
+					+ " samples saved in " + modelFile);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * Load a saved model and classify a file, the files of a directory or,
+	 * when watching, every file added to the directory
+	 * 
+	 * @param args
+	 *            classify, the model file, the file or directory and
+	 *            optionally watch
+	 */
+	private static void classify(String[] args) {
+		NaiveBayesModel model;
+		File target;
+		boolean watch;
+
+		try {
+			model = NaiveBayesModel.load(new File(args[1]));
+			target = new File(args[2]);
+			watch = args.length > 3 && args[3].equals(WATCH);
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			System.exit(0);
+			return;
+		} catch (Exception e) {
+			System.out.println("Usage: Main " + CLASSIFY
+					+ " <model file> <file or directory> [" + WATCH + "]");
+			System.exit(0);
+			return;
+		}
+
+		if (!extractsFeaturesOf(model)) {
+			System.exit(0);
+			return;
+		}
+
+		if (!target.isDirectory()) {
+			classifyFile(model, target);
+			return;
+		}
+
+		File[] files = target.listFiles();
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isFile()) {
+				classifyFile(model, file);
+			}
+		}
+
+		if (watch) {
+			try {
+				watchDirectory(model, target);
+			} catch (IOException e) {
+				System.out.println(e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Load a saved model and print the speech segments of a recording, with
+	 * frames of the size of the training signals
+	 * 
+	 * @param args
+	 *            segment, the model file, the recording and optionally the
+	 *            sample rate and the number of hangover frames
+	 */
+	private static void segment(String[] args) {
+		NaiveBayesModel model;
+		File recording;
+		int sampleRate = SAMPLE_RATE;
+		int hangoverFrames = HANGOVER_FRAMES;
+
+		try {
+			model = NaiveBayesModel.load(new File(args[1]));
+			recording = new File(args[2]);
+			if (args.length > 3) {
+				sampleRate = Integer.parseInt(args[3]);
+			}
+			if (args.length > 4) {
+				hangoverFrames = Integer.parseInt(args[4]);
+			}
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			System.exit(0);
+			return;
+		} catch (Exception e) {
+			System.out.println("Usage: Main " + SEGMENT
+					+ " <model file> <recording> [sample rate] [hangover frames]");
+			System.exit(0);
+			return;
+		}
+
+		if (!extractsFeaturesOf(model)) {
+			System.exit(0);
+			return;
+		}
+
+		final SpeechSegmenter segmenter = new SpeechSegmenter(model,
+				sampleRate, model.getAudioSizeInMS(), hangoverFrames,
+				new SpeechSegmenter.SegmentListener() {
+					@Override
+					public void segment(double start, double end) {
+						System.out.println(String.format(
+								"SPEECH %.3f s - %.3f s", start, end));
+					}
+				});
+
+		long start = System.nanoTime();
+		try {
+			FileReader.streamFile(recording, CHUNK_SIZE,
+					new FileReader.SampleConsumer() {
+						@Override
+						public void accept(double[] samples, int length) {
+							segmenter.process(samples, length);
+						}
+					});
+			segmenter.finish();
+		} catch (IOException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format(
+				"Segmented %.1f s of audio (%d of %d frames speech) in %.3f s, "
+						+ "%.0f times faster than real time",
+				segmenter.getSecondsProcessed(), segmenter.getSpeechFrames(),
+				segmenter.getFramesProcessed(), elapsed,
+				segmenter.getSecondsProcessed() / elapsed));
+	}
+
+	/**
+	 * @param model
+	 * @return if the features extracted by SignalProcessing are the ones the
+	 *         model was trained with, printing why not otherwise
+	 */
+	private static boolean extractsFeaturesOf(NaiveBayesModel model) {
+		String[] featureNames = model.getFeatureNames();
+		if (Arrays.equals(featureNames, SignalProcessing.FEATURE_NAMES)) {
+			return true;
+		}
+
+		System.out.println("The model was trained with the features "
+				+ Arrays.toString(featureNames) + ", but the signals have "
+				+ Arrays.toString(SignalProcessing.FEATURE_NAMES)
+				+ ". Train it again");
+		return false;
+	}
+
+	/**
+	 * Classify the files created or modified in the directory until the
+	 * program is stopped
+	 * 
+	 * @param model
+	 * @param directory
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static void watchDirectory(NaiveBayesModel model, File directory)
+			throws IOException, InterruptedException {
+		try (WatchService watchService = FileSystems.getDefault()
+				.newWatchService()) {
+			Path path = directory.toPath();
+			path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+
+			while (true) {
+				WatchKey key = watchService.take();
+
+				// A new file is usually both created and modified
+				LinkedHashSet<File> files = new LinkedHashSet<>();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+						files.add(path.resolve((Path) event.context()).toFile());
+					}
+				}
+
+				// Empty files are still being written
+				for (File file : files) {
+					if (file.isFile() && file.length() > 0) {
+						classifyFile(model, file);
+					}
+				}
+
+				if (!key.reset()) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Print if the file is silence or speech, with the posterior probability
+	 * 
+	 * @param model
+	 * @param file
+	 */
+	private static void classifyFile(NaiveBayesModel model, File file) {
+		FeatureMatrix features = new FeatureMatrix(
+				SignalProcessing.FEATURE_NAMES, 1);
+		try {
+			new SignalProcessing(FileReader.readFile(file),
+					model.getAudioSizeInMS()).extractFeatures(
+					model.getWindowSize(), features, 0);
+		} catch (IOException | RuntimeException e) {
+			System.out.println(file.getName() + ": " + e.getMessage());
+			return;
+		}
+
+		double[] logPosteriorSpeech = new double[1];
+		int label = model.classify(features.columns(), null,
+				logPosteriorSpeech)[0];
+		double speech = Math.exp(logPosteriorSpeech[0]) * 100;
+
+		System.out.println(file.getName()
+				+ ": "
+				+ (label == NaiveBayesModel.SPEECH ? "SPEECH" : "SILENCE")
+				+ " ("
+				+ Stat.round(label == NaiveBayesModel.SPEECH ? speech
+						: 100 - speech) + "%)");
+	}
+}
@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Class that classifies signals as silence or speech with a Naive Bayes
+ * model of normal distributions, one per class and type of information. The
+ * scores are summed in log space, so extreme values do not underflow, and
+ * batches are given as one array per type of information so each loop runs
+ * over contiguous memory
+ *
+ * @author enzoroiz
+ *
+ */
+public class NaiveBayesModel {
+	/**
+	 * Final fields
+	 */
+	public static final int SILENCE = 0;
+	public static final int SPEECH = 1;
+	// "NBM1" in ASCII
+	private static final int MAGIC = 0x4E424D31;
+	private static final int VERSION = 1;
+
+	/**
+	 * Instance fields
+	 */
+	private GaussianModel[] silenceModels;
+	private GaussianModel[] speechModels;
+	private double logPriorSilence;
+	private double logPriorSpeech;
+	// Extraction parameters of the training signals, 0 if unknown
+	private int audioSizeInMS;
+	private int windowSize;
+	// Names of the features of the training signals
+	private String[] featureNames;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureNames
+	 *            of the training signals, one per type of information
+	 * @param silenceModels
+	 *            one for each type of information
+	 * @param speechModels
+	 *            one for each type of information
+	 * @param pSilence
+	 *            probability of silence
+	 * @param pSpeech
+	 *            probability of speech
+	 */
+	public NaiveBayesModel(String[] featureNames,
+			GaussianModel[] silenceModels, GaussianModel[] speechModels,
+			double pSilence, double pSpeech) {
+		if (silenceModels.length != speechModels.length) {
+			throw new IllegalArgumentException(
+					"Both classes need the same types of information");
+		}
+		if (featureNames.length != silenceModels.length) {
+			throw new IllegalArgumentException("Expected "
+					+ silenceModels.length + " feature names, got "
+					+ featureNames.length);
+		}
+
+		this.featureNames = featureNames.clone();
+		this.silenceModels = silenceModels;
+		this.speechModels = speechModels;
+		this.logPriorSilence = Math.log(pSilence);
+		this.logPriorSpeech = Math.log(pSpeech);
+	}
+
+	/**
+	 * Classify a batch of signals
+	 *
+	 * @param features
+	 *            one array per type of information, each with one value per
+	 *            signal
+	 * @param logPosteriorSilence
+	 *            filled with the log of the posterior of silence of each
+	 *            signal, may be null
+	 * @param logPosteriorSpeech
+	 *            filled with the log of the posterior of speech of each
+	 *            signal, may be null
+	 * @return SILENCE or SPEECH for each signal
+	 */
+	public int[] classify(double[][] features, double[] logPosteriorSilence,
+			double[] logPosteriorSpeech) {
+		if (features.length != silenceModels.length) {
+			throw new IllegalArgumentException("Expected "
+					+ silenceModels.length + " types of information, got "
+					+ features.length);
+		}
+
+		int size = features.length == 0 ? 0 : features[0].length;
+		double[] silenceScore = new double[size];
+		double[] speechScore = new double[size];
+
+		for (int i = 0; i < size; i++) {
+			silenceScore[i] = logPriorSilence;
+			speechScore[i] = logPriorSpeech;
+		}
+
+		// For each type of information, over all the signals
+		for (int m = 0; m < features.length; m++) {
+			addLogDensities(features[m], silenceModels[m], silenceScore);
+			addLogDensities(features[m], speechModels[m], speechScore);
+		}
+
+		int[] labels = new int[size];
+		for (int i = 0; i < size; i++) {
+			labels[i] = speechScore[i] > silenceScore[i] ? SPEECH : SILENCE;
+
+			// Normalize by the evidence: log(exp(a) + exp(b))
+			double max = Math.max(silenceScore[i], speechScore[i]);
+			double min = Math.min(silenceScore[i], speechScore[i]);
+			double logEvidence = max + Math.log1p(Math.exp(min - max));
+
+			if (logPosteriorSilence != null) {
+				logPosteriorSilence[i] = silenceScore[i] - logEvidence;
+			}
+			if (logPosteriorSpeech != null) {
+				logPosteriorSpeech[i] = speechScore[i] - logEvidence;
+			}
+		}
+
+		return labels;
+	}
+
+	/**
+	 * Classify a single signal without allocating, e.g. each frame of a
+	 * stream
+	 *
+	 * @param signalInfo
+	 * @return SILENCE or SPEECH
+	 */
+	public int classify(SignalInfo signalInfo) {
+		double silenceScore = logPriorSilence;
+		double speechScore = logPriorSpeech;
+
+		for (int m = 0; m < silenceModels.length; m++) {
+			silenceScore += silenceModels[m].logDensity(signalInfo.get(m));
+			speechScore += speechModels[m].logDensity(signalInfo.get(m));
+		}
+
+		return speechScore > silenceScore ? SPEECH : SILENCE;
+	}
+
+	/**
+	 * @param values
+	 *            of one type of information
+	 * @param model
+	 *            of that information
+	 * @param score
+	 *            to which the log of the densities are added
+	 */
+	private static void addLogDensities(double[] values, GaussianModel model,
+			double[] score) {
+		double mean = model.getMean();
+		double logNormalization = model.getLogNormalization();
+		double inverseTwoVariance = model.getInverseTwoVariance();
+
+		for (int i = 0; i < values.length; i++) {
+			double difference = values[i] - mean;
+			score[i] += logNormalization - difference * difference
+					* inverseTwoVariance;
+		}
+	}
+
+	/**
+	 * Save the model in a small binary file, with the extraction parameters
+	 * and the feature names needed to process new signals the same way as the
+	 * training ones
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(audioSizeInMS);
+			output.writeInt(windowSize);
+			output.writeDouble(Math.exp(logPriorSilence));
+			output.writeDouble(Math.exp(logPriorSpeech));
+			output.writeInt(silenceModels.length);
+			for (String featureName : featureNames) {
+				output.writeUTF(featureName);
+			}
+			for (int m = 0; m < silenceModels.length; m++) {
+				output.writeDouble(silenceModels[m].getMean());
+				output.writeDouble(silenceModels[m].getVariance());
+				output.writeDouble(speechModels[m].getMean());
+				output.writeDouble(speechModels[m].getVariance());
+			}
+		}
+	}
+
+	/**
+	 * @param file
+	 *            written by save
+	 * @return the model saved in the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a model
+	 */
+	public static NaiveBayesModel load(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			int version = input.readInt() == MAGIC ? input.readInt() : -1;
+			if (version != VERSION) {
+				throw new IOException("The file " + file + " is not a model");
+			}
+
+			int audioSizeInMS = input.readInt();
+			int windowSize = input.readInt();
+			double pSilence = input.readDouble();
+			double pSpeech = input.readDouble();
+			int infos = input.readInt();
+			String[] featureNames = new String[infos];
+			for (int m = 0; m < infos; m++) {
+				featureNames[m] = input.readUTF();
+			}
+
+			GaussianModel[] silenceModels = new GaussianModel[infos];
+			GaussianModel[] speechModels = new GaussianModel[infos];
+			for (int m = 0; m < infos; m++) {
+				silenceModels[m] = new GaussianModel(input.readDouble(),
+						input.readDouble());
+				speechModels[m] = new GaussianModel(input.readDouble(),
+						input.readDouble());
+			}
+
+			NaiveBayesModel model = new NaiveBayesModel(featureNames,
+					silenceModels, speechModels, pSilence, pSpeech);
+			model.setExtraction(audioSizeInMS, windowSize);
+
+			return model;
+		}
+	}
+
+	/**
+	 * @param audioSizeInMS
+	 *            of the training signals
+	 * @param windowSize
+	 *            used to extract their information
+	 */
+	public void setExtraction(int audioSizeInMS, int windowSize) {
+		this.audioSizeInMS = audioSizeInMS;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * @return the size in milliseconds of the training signals
+	 */
+	public int getAudioSizeInMS() {
+		return audioSizeInMS;
+	}
+
+	/**
+	 * @return the window used to extract the information of the signals
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * @return the names of the features of the training signals
+	 */
+	public String[] getFeatureNames() {
+		return featureNames.clone();
+	}
+}
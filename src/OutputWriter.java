@@ -50,6 +50,23 @@ public class OutputWriter {
 		}
 	}
 
+	/**
+	 * Write the features of each signal of the matrix in a line, as the
+	 * SignalInfo toString
+	 * 
+	 * @param toWrite
+	 *            matrix with a row per signal
+	 */
+	public void writeFile(FeatureMatrix toWrite) {
+		for (int i = 0; i < toWrite.rows(); i++) {
+			try {
+				this.outputFile.write(toWrite.rowToString(i) + "\n");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Write the string in the file
 	 * 
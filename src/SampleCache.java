@@ -0,0 +1,241 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Class that keeps a binary copy of the text sample files, so they are
+ * parsed only once. The binary file has a header with the number of samples,
+ * their type and the size, modification time and checksum of the source,
+ * followed by the samples as little-endian doubles. It is memory mapped when
+ * the source did not change
+ *
+ * @author enzoroiz
+ *
+ */
+public class SampleCache {
+	/**
+	 * Final fields
+	 */
+	// "SIGB" in ASCII
+	private static final int MAGIC = 0x53494742;
+	private static final byte VERSION = 1;
+	private static final byte FLOAT64 = 1;
+	// Keeps the samples aligned to 8 bytes
+	private static final int HEADER_SIZE = 40;
+	private static final String EXTENSION = ".bin";
+
+	/**
+	 * Instance fields
+	 */
+	private File directory;
+	private volatile boolean writable;
+
+	/**
+	 * Constructor
+	 *
+	 * @param directory
+	 *            where the binary files are kept, created if needed
+	 */
+	public SampleCache(File directory) {
+		this.directory = directory;
+		this.writable = true;
+	}
+
+	/**
+	 * Read the samples of the source file from the cache, or parse the source
+	 * and add it to the cache if it is missing or out of date
+	 *
+	 * @param source
+	 *            text file with one sample per line
+	 * @return buffer containing the samples
+	 * @throws IOException
+	 *             if the source cannot be read
+	 */
+	public SignalBuffer read(File source) throws IOException {
+		File cacheFile = new File(directory, source.getName() + EXTENSION);
+
+		if (cacheFile.isFile()) {
+			SignalBuffer sample = readCacheFile(cacheFile, source);
+			if (sample != null) {
+				return sample;
+			}
+		}
+
+		SignalBuffer sample = FileReader.readFile(source);
+
+		if (writable) {
+			try {
+				writeCacheFile(cacheFile, source, sample);
+			} catch (IOException e) {
+				// Keep reading the text files, without trying for every file
+				writable = false;
+				System.out.println("The samples will not be cached: "
+						+ e.getMessage());
+			}
+		}
+
+		return sample;
+	}
+
+	/**
+	 * @param cacheFile
+	 * @param source
+	 * @return the samples of the cache file, null if it does not match the
+	 *         source
+	 * @throws IOException
+	 */
+	private SignalBuffer readCacheFile(File cacheFile, File source)
+			throws IOException {
+		double[] sample;
+		long lastModified = source.lastModified();
+		boolean touched;
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(
+				cacheFile, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			if (channel.size() < HEADER_SIZE) {
+				return null;
+			}
+
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			bytes.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (bytes.getInt(0) != MAGIC || bytes.get(4) != VERSION
+					|| bytes.get(5) != FLOAT64) {
+				return null;
+			}
+
+			int sampleCount = bytes.getInt(8);
+			long sourceSize = bytes.getLong(16);
+			long sourceLastModified = bytes.getLong(24);
+			long sourceChecksum = bytes.getLong(32);
+
+			if (channel.size() != HEADER_SIZE + 8L * sampleCount
+					|| sourceSize != source.length()) {
+				return null;
+			}
+
+			// Same size but touched: only the content tells if it changed
+			touched = sourceLastModified != lastModified;
+			if (touched && sourceChecksum != checksum(source)) {
+				return null;
+			}
+
+			// Copied, as SignalBuffer and the kernels work on a double[],
+			// which a mapped buffer cannot give
+			sample = new double[sampleCount];
+			bytes.position(HEADER_SIZE);
+			bytes.asDoubleBuffer().get(sample);
+		}
+
+		// The content is the same, so the next runs can trust the time again
+		// instead of computing the checksum of the source every time
+		if (touched && writable) {
+			updateLastModified(cacheFile, lastModified);
+		}
+
+		return new SignalBuffer(sample);
+	}
+
+	/**
+	 * Write the modification time of the source in the header of the cache
+	 * file. A failure only means the checksum is computed again next time
+	 *
+	 * @param cacheFile
+	 * @param lastModified
+	 *            of the source
+	 */
+	private void updateLastModified(File cacheFile, long lastModified) {
+		ByteBuffer bytes = ByteBuffer.allocate(8);
+		bytes.order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putLong(lastModified);
+		bytes.flip();
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(
+				cacheFile, "rw");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			while (bytes.hasRemaining()) {
+				channel.write(bytes, 24 + bytes.position());
+			}
+		} catch (IOException e) {
+			// Read-only cache, or replaced by another run
+		}
+	}
+
+	/**
+	 * Write the cache file in a temporary file and then rename it, so a
+	 * concurrent run never maps a partial file
+	 *
+	 * @param cacheFile
+	 * @param source
+	 * @param sample
+	 * @throws IOException
+	 */
+	private void writeCacheFile(File cacheFile, File source, SignalBuffer sample)
+			throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory);
+		}
+
+		long lastModified = source.lastModified();
+		long checksum = checksum(source);
+		int sampleCount = sample.length();
+
+		ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + 8 * sampleCount);
+		bytes.order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(MAGIC);
+		bytes.put(VERSION);
+		bytes.put(FLOAT64);
+		bytes.putShort((short) 0);
+		bytes.putInt(sampleCount);
+		bytes.putInt(0);
+		bytes.putLong(source.length());
+		bytes.putLong(lastModified);
+		bytes.putLong(checksum);
+		for (int i = 0; i < sampleCount; i++) {
+			bytes.putDouble(sample.get(i));
+		}
+		bytes.flip();
+
+		File temporary = File.createTempFile(source.getName(), ".tmp",
+				directory);
+		try {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(
+					temporary, "rw");
+					FileChannel channel = randomAccessFile.getChannel()) {
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+			}
+
+			Files.move(temporary.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return the CRC32 of the content of the file
+	 * @throws IOException
+	 */
+	private static long checksum(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file,
+				"r"); FileChannel channel = randomAccessFile.getChannel()) {
+			CRC32 crc = new CRC32();
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()));
+			return crc.getValue();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+import java.util.ArrayList;
+
+/**
+ * Class that stores a signal as a primitive array of doubles, avoiding one
+ * boxed Double per sample. The buffer is a view over an array given an offset
+ * and a length, so it can share the data of another buffer. A view can also
+ * start with a number of leading zeros that are not stored, which is how a
+ * delayed signal is represented without copying it, and carry a scale factor
+ * applied when the samples are read, which is how a signal is normalized
+ * without writing it
+ *
+ * @author enzoroiz
+ *
+ */
+public class SignalBuffer {
+	/**
+	 * Instance fields
+	 */
+	private double[] data;
+	private int offset;
+	private int length;
+	private int leadingZeros;
+	// Factor applied to the stored samples when they are read
+	private double scale;
+
+	/**
+	 * Constructor creating an empty buffer with the given length
+	 *
+	 * @param length
+	 */
+	public SignalBuffer(int length) {
+		this(new double[length], 0, length);
+	}
+
+	/**
+	 * Constructor wrapping the whole array given
+	 *
+	 * @param data
+	 */
+	public SignalBuffer(double[] data) {
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * Constructor wrapping part of the array given
+	 *
+	 * @param data
+	 * @param offset
+	 *            of the first sample in the array
+	 * @param length
+	 *            number of samples
+	 */
+	public SignalBuffer(double[] data, int offset, int length) {
+		this(data, offset, length, 0, 1.0);
+	}
+
+	/**
+	 * Constructor of a view starting with zeros that are not stored
+	 * 
+	 * @param data
+	 * @param offset
+	 *            of the first stored sample in the array
+	 * @param length
+	 *            number of samples, including the leading zeros
+	 * @param leadingZeros
+	 * @param scale
+	 *            factor applied to the stored samples
+	 */
+	private SignalBuffer(double[] data, int offset, int length,
+			int leadingZeros, double scale) {
+		if (offset < 0 || leadingZeros < 0 || length < leadingZeros
+				|| offset + length - leadingZeros > data.length) {
+			throw new IndexOutOfBoundsException("Invalid offset " + offset
+					+ " and length " + length + " for an array of size "
+					+ data.length);
+		}
+
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.leadingZeros = leadingZeros;
+		this.scale = scale;
+	}
+
+	/**
+	 * Adapter from the array list representation
+	 *
+	 * @param sample
+	 * @return a buffer containing a copy of the sample
+	 */
+	public static SignalBuffer fromList(ArrayList<Double> sample) {
+		double[] data = new double[sample.size()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = sample.get(i);
+		}
+
+		return new SignalBuffer(data);
+	}
+
+	/**
+	 * @param index
+	 * @return the sample in the given index
+	 */
+	public double get(int index) {
+		if (index < leadingZeros) {
+			if (index < 0) {
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+			return 0.0;
+		}
+
+		return data[offset + index - leadingZeros] * scale;
+	}
+
+	/**
+	 * @param index
+	 * @param value
+	 *            to store in the given index
+	 */
+	public void set(int index, double value) {
+		if (index < leadingZeros) {
+			throw new UnsupportedOperationException(
+					"Cannot write in the leading zeros of a shifted view");
+		}
+		if (scale != 1.0) {
+			throw new UnsupportedOperationException(
+					"Cannot write in a scaled view");
+		}
+
+		data[offset + index - leadingZeros] = value;
+	}
+
+	/**
+	 * @return the number of samples
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return the backing array, shared with this buffer
+	 */
+	public double[] array() {
+		return data;
+	}
+
+	/**
+	 * @return the position of the first stored sample in the backing array
+	 */
+	public int offset() {
+		return offset;
+	}
+
+	/**
+	 * @return the number of zeros before the first stored sample
+	 */
+	public int leadingZeros() {
+		return leadingZeros;
+	}
+
+	/**
+	 * @return the factor applied to the stored samples when they are read
+	 */
+	public double scale() {
+		return scale;
+	}
+
+	/**
+	 * Scale the signal without writing it. The view is read-only
+	 * 
+	 * @param factor
+	 *            multiplying every sample
+	 * @return a view sharing the same data
+	 */
+	public SignalBuffer scaled(double factor) {
+		return new SignalBuffer(data, offset, length, leadingZeros, scale
+				* factor);
+	}
+
+	/**
+	 * Shift the signal to the right without copying it. The first samples of
+	 * the view are zeros and the last ones of this buffer are dropped, so the
+	 * length stays the same
+	 * 
+	 * @param shift
+	 *            number of samples
+	 * @return a view sharing the same data
+	 */
+	public SignalBuffer shifted(int shift) {
+		if (shift < 0) {
+			throw new IllegalArgumentException("Invalid shift " + shift);
+		}
+
+		int zeros = (int) Math.min((long) leadingZeros + shift, length);
+		return new SignalBuffer(data, offset, length, zeros, scale);
+	}
+
+	/**
+	 * @param from
+	 *            first sample of the view
+	 * @param to
+	 *            sample after the last one of the view
+	 * @return a buffer sharing the same data
+	 */
+	public SignalBuffer slice(int from, int to) {
+		if (from < 0 || to > length || from > to) {
+			throw new IndexOutOfBoundsException("Invalid slice [" + from
+					+ ", " + to + ") for a buffer of size " + length);
+		}
+
+		int zeros = Math.min(Math.max(leadingZeros - from, 0), to - from);
+		return new SignalBuffer(data, offset
+				+ Math.max(from - leadingZeros, 0), to - from, zeros, scale);
+	}
+
+	/**
+	 * @return a buffer with a copy of the samples, with the scale applied
+	 */
+	public SignalBuffer copy() {
+		return new SignalBuffer(toArray());
+	}
+
+	/**
+	 * @return a copy of the samples in a new array, with the scale applied
+	 */
+	public double[] toArray() {
+		double[] copy = new double[length];
+		System.arraycopy(data, offset, copy, leadingZeros, length
+				- leadingZeros);
+		if (scale != 1.0) {
+			for (int i = leadingZeros; i < length; i++) {
+				copy[i] *= scale;
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Adapter to the array list representation
+	 *
+	 * @return an array list containing the samples
+	 */
+	public ArrayList<Double> toList() {
+		ArrayList<Double> sample = new ArrayList<Double>(length);
+		for (int i = 0; i < length; i++) {
+			sample.add(get(i));
+		}
+
+		return sample;
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+}
@@ -0,0 +1,272 @@
+/**
+ * Class that indexes a signal with prefix sums of the samples, of their
+ * absolute values, of their squares and of the zero crossings. Once built,
+ * the sum of any range of samples, and so the value of the moving average,
+ * convolution, energy, magnitude and zero crossing rate at any position and
+ * for any window, is answered in O(1). Each prefix sum keeps the rounding
+ * error of its additions in a second array, so long signals do not lose the
+ * precision of the small ranges, and the samples are shifted by their mean
+ * before being squared, so the variance does not suffer from cancellation
+ *
+ * @author enzoroiz
+ *
+ */
+public class SignalIndex {
+	/**
+	 * Instance fields
+	 */
+	private int size;
+	// Mean of the sample, subtracted before the sums and the squares
+	private double shift;
+	// Prefix sums: position i has the sum of the samples before i
+	private double[] shiftedSum;
+	private double[] shiftedSumError;
+	private double[] absoluteSum;
+	private double[] absoluteSumError;
+	private double[] shiftedSquareSum;
+	private double[] shiftedSquareSumError;
+	private int[] crossings;
+
+	/**
+	 * Constructor
+	 *
+	 * @param sample
+	 *            to index
+	 */
+	public SignalIndex(SignalBuffer sample) {
+		size = sample.length();
+		shiftedSum = new double[size + 1];
+		shiftedSumError = new double[size + 1];
+		absoluteSum = new double[size + 1];
+		absoluteSumError = new double[size + 1];
+		shiftedSquareSum = new double[size + 1];
+		shiftedSquareSumError = new double[size + 1];
+		crossings = new int[size + 1];
+
+		for (int i = 0; i < size; i++) {
+			shift += sample.get(i);
+		}
+		shift = size == 0 ? 0 : shift / size;
+
+		boolean sampleBeforeIsPositive = true;
+		for (int i = 0; i < size; i++) {
+			double x = sample.get(i);
+			double shifted = x - shift;
+			add(shiftedSum, shiftedSumError, i, shifted);
+			add(absoluteSum, absoluteSumError, i, Math.abs(x));
+			add(shiftedSquareSum, shiftedSquareSumError, i, shifted * shifted);
+
+			// The first sample is compared with a positive one, as in
+			// SignalProcessing
+			boolean sampleNowIsPositive = x >= 0;
+			crossings[i + 1] = crossings[i]
+					+ (sampleNowIsPositive != sampleBeforeIsPositive ? 1 : 0);
+			sampleBeforeIsPositive = sampleNowIsPositive;
+		}
+	}
+
+	/**
+	 * Add a number to a prefix sum, keeping the rounding error of the
+	 * addition (Knuth's two-sum)
+	 *
+	 * @param prefix
+	 * @param error
+	 * @param i
+	 *            position of the number
+	 * @param x
+	 *            the number
+	 */
+	private static void add(double[] prefix, double[] error, int i, double x) {
+		double total = prefix[i] + x;
+		double added = total - prefix[i];
+		double lost = (prefix[i] - (total - added)) + (x - added);
+
+		prefix[i + 1] = total;
+		error[i + 1] = error[i] + lost;
+	}
+
+	/**
+	 * @param prefix
+	 * @param error
+	 * @param from
+	 *            first sample, clamped to the signal
+	 * @param to
+	 *            sample after the last one, clamped to the signal
+	 * @return the sum of the range
+	 */
+	private double range(double[] prefix, double[] error, int from, int to) {
+		from = clamp(from);
+		to = clamp(to);
+		if (to <= from) {
+			return 0;
+		}
+
+		return (prefix[to] - prefix[from]) + (error[to] - error[from]);
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @return the position inside [0, size]
+	 */
+	private int clamp(int i) {
+		return Math.max(0, Math.min(i, size));
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the number of samples of the range inside the signal
+	 */
+	private int count(int from, int to) {
+		return Math.max(clamp(to) - clamp(from), 0);
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the sum of the samples
+	 */
+	public double sum(int from, int to) {
+		return range(shiftedSum, shiftedSumError, from, to) + count(from, to)
+				* shift;
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the sum of the absolute values of the samples
+	 */
+	public double absoluteSum(int from, int to) {
+		return range(absoluteSum, absoluteSumError, from, to);
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the sum of the squares of the samples
+	 */
+	public double squareSum(int from, int to) {
+		// sum of (y + shift)^2 from the sums of the shifted samples y
+		return range(shiftedSquareSum, shiftedSquareSumError, from, to) + 2
+				* shift * range(shiftedSum, shiftedSumError, from, to)
+				+ count(from, to) * shift * shift;
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the number of samples whose sign differs from the one before
+	 */
+	public int zeroCrossings(int from, int to) {
+		from = clamp(from);
+		to = clamp(to);
+
+		return to <= from ? 0 : crossings[to] - crossings[from];
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the mean of the samples
+	 */
+	public double mean(int from, int to) {
+		return sum(from, to) / count(from, to);
+	}
+
+	/**
+	 * @param from
+	 *            first sample
+	 * @param to
+	 *            sample after the last one
+	 * @return the variance of the samples
+	 */
+	public double variance(int from, int to) {
+		int count = count(from, to);
+		double shiftedMean = range(shiftedSum, shiftedSumError, from, to)
+				/ count;
+
+		return Math.max(range(shiftedSquareSum, shiftedSquareSumError, from,
+				to) / count - shiftedMean * shiftedMean, 0);
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @param windowSize
+	 *            in samples
+	 * @return the moving average at the position, as
+	 *         SignalProcessing.movingAverage before the normalization
+	 */
+	public double movingAverage(int i, int windowSize) {
+		int end = i + windowSize / 2;
+		return sum(end - windowSize, end) / windowSize;
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @param windowSize
+	 *            in samples
+	 * @return the convolution at the position, as
+	 *         SignalProcessing.convolution before the normalization
+	 */
+	public double convolution(int i, int windowSize) {
+		return sum(i - windowSize + 1, i + 1);
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @param windowSize
+	 *            in samples
+	 * @return the energy at the position, as SignalProcessing.energy
+	 */
+	public double energy(int i, int windowSize) {
+		return squareSum(i - windowSize + 1, i + 1) / 10000.0;
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @param windowSize
+	 *            in samples
+	 * @return the magnitude at the position, as SignalProcessing.magnitude
+	 */
+	public double magnitude(int i, int windowSize) {
+		return absoluteSum(i - windowSize + 1, i + 1);
+	}
+
+	/**
+	 * @param i
+	 *            position
+	 * @param windowSize
+	 *            in samples
+	 * @param window
+	 *            in milliseconds
+	 * @return the zero crossing rate at the position, as
+	 *         SignalProcessing.zeroCrossingRate
+	 */
+	public double zeroCrossingRate(int i, int windowSize, int window) {
+		return zeroCrossings(i - windowSize + 1, i + 1) / (2.0 * window);
+	}
+
+	/**
+	 * @return the number of samples indexed
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,5 +1,6 @@
 /**
- * Class that stores informations extracted from a read signal
+ * Class that stores informations extracted from a read signal, one value per
+ * feature of SignalProcessing.FEATURE_NAMES
  * 
  * @author enzoroiz
  */
@@ -7,57 +8,74 @@ public class SignalInfo {
 	/**
 	 * Instance fields
 	 */
-	public static int NUM_INFO = 3;
-	public static String ENERGY = "ENERGY";
-	public static String MAGNITUDE = "MAGNITUDE";
-	public static String ZCR = "ZERO CROSSING RATE";
-	private double energy;
-	private double magnitude;
-	private double zeroCrossingRate;
+	private double[] features;
 
 	/**
 	 * Constructor passing as parameter
 	 * 
-	 * @param energyLog
-	 * @param magnitudeLog
-	 * @param zeroCrossingRateAverage
+	 * @param features
+	 *            the value of each feature, in the order of the names
 	 */
-	public SignalInfo(double energy, double magnitude, double zeroCrossingRate) {
-		this.energy = energy;
-		this.magnitude = magnitude;
-		this.zeroCrossingRate = zeroCrossingRate;
+	public SignalInfo(double... features) {
+		this.features = features.clone();
 	}
 
 	/**
-	 * Getter to return the specified information 0 if energyLog 1 if
-	 * magnitudeLog 2 if zeroCrossingRateAverage
+	 * Getter to return the specified information, in the order of
+	 * SignalProcessing.FEATURE_NAMES
 	 * 
 	 * @param index
 	 * @return the information passed as index
 	 */
 	public double get(int index) {
-		switch (index) {
-		case 0:
-			return energy;
-		case 1:
-			return magnitude;
-		case 2:
-			return zeroCrossingRate;
-		default:
+		if (index < 0 || index >= features.length) {
 			return Double.NaN;
 		}
+
+		return features[index];
+	}
+
+	/**
+	 * @return the number of features
+	 */
+	public int size() {
+		return features.length;
+	}
+
+	/**
+	 * @return a copy of the value of each feature
+	 */
+	public double[] toArray() {
+		return features.clone();
 	}
 
 	@Override
 	public String toString() {
-		return ("[" + energy + ", " + magnitude + ", " + zeroCrossingRate + "]");
+		StringBuilder text = new StringBuilder("[");
+		for (int m = 0; m < features.length; m++) {
+			if (m > 0) {
+				text.append(", ");
+			}
+			text.append(features[m]);
+		}
+
+		return text.append("]").toString();
 	}
 
 	@Override
 	public boolean equals(Object obj) {
 		SignalInfo signalInfo = (SignalInfo) obj;
-		return (signalInfo.get(0) == energy && signalInfo.get(1) == magnitude && signalInfo
-				.get(2) == zeroCrossingRate);
+		if (signalInfo.size() != features.length) {
+			return false;
+		}
+
+		for (int m = 0; m < features.length; m++) {
+			if (signalInfo.get(m) != features[m]) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 }
@@ -0,0 +1,189 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class that reads and processes the sample files at the same time. Reader
+ * threads parse the files concurrently and hand them through a bounded queue
+ * to the extractor threads, so reading and processing overlap and only the
+ * samples in the queue or being handled are kept in memory
+ *
+ * @author enzoroiz
+ *
+ */
+public class SignalPipeline {
+	/**
+	 * Instance fields
+	 */
+	private int readers;
+	private int extractors;
+	private int queueDepth;
+
+	/**
+	 * Sample read, waiting to be processed
+	 */
+	private static class ReadSample {
+		private int index;
+		private SignalBuffer sample;
+
+		private ReadSample(int index, SignalBuffer sample) {
+			this.index = index;
+			this.sample = sample;
+		}
+	}
+
+	// Tells an extractor that there is nothing else to process
+	private static final ReadSample END = new ReadSample(-1, null);
+
+	/**
+	 * Constructor
+	 *
+	 * @param readers
+	 *            number of threads reading files
+	 * @param extractors
+	 *            number of threads processing the samples
+	 * @param queueDepth
+	 *            number of samples read waiting to be processed
+	 */
+	public SignalPipeline(int readers, int extractors, int queueDepth) {
+		if (readers < 1 || extractors < 1 || queueDepth < 1) {
+			throw new IllegalArgumentException(
+					"The pipeline needs at least one reader, one extractor and a queue");
+		}
+
+		this.readers = readers;
+		this.extractors = extractors;
+		this.queueDepth = queueDepth;
+	}
+
+	/**
+	 * Read and process the sample files of the file reader
+	 *
+	 * @param fileReader
+	 * @param audioSizeInMS
+	 *            of the files
+	 * @param windowSize
+	 * @return the features of each signal, a row per file in their order
+	 * @throws IOException
+	 *             if a file cannot be read or has a malformed line
+	 */
+	public FeatureMatrix process(FileReader fileReader,
+			int audioSizeInMS, int windowSize) throws IOException {
+		return process(fileReader, fileReader.getSampleFiles(), audioSizeInMS,
+				windowSize);
+	}
+
+	/**
+	 * Read and process some of the sample files of the file reader
+	 *
+	 * @param fileReader
+	 * @param files
+	 *            to read and process
+	 * @param audioSizeInMS
+	 *            of the files
+	 * @param windowSize
+	 * @return the features of each signal, a row per file in their order
+	 * @throws IOException
+	 *             if a file cannot be read or has a malformed line
+	 */
+	public FeatureMatrix process(final FileReader fileReader,
+			List<File> files, final int audioSizeInMS, final int windowSize)
+			throws IOException {
+		// Each extractor writes the rows of its samples
+		final FeatureMatrix features = new FeatureMatrix(
+				SignalProcessing.FEATURE_NAMES, files.size());
+		final BlockingQueue<ReadSample> queue = new ArrayBlockingQueue<>(
+				queueDepth);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+		ExecutorService readerPool = Executors.newFixedThreadPool(readers);
+		ExecutorService extractorPool = Executors
+				.newFixedThreadPool(extractors);
+
+		try {
+			// Extractors take samples until they find the end
+			ArrayList<Future<Void>> extractions = new ArrayList<>();
+			for (int i = 0; i < extractors; i++) {
+				extractions.add(extractorPool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						ReadSample readSample;
+						while ((readSample = queue.take()) != END) {
+							// Keep draining after a failure so no reader is
+							// left waiting on a full queue
+							if (failure.get() != null) {
+								continue;
+							}
+
+							try {
+								new SignalProcessing(readSample.sample,
+										audioSizeInMS).extractFeatures(
+										windowSize, features,
+										readSample.index);
+							} catch (RuntimeException e) {
+								failure.compareAndSet(null, e);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			// Readers put the samples in the queue, waiting while it is full
+			ArrayList<Future<Void>> readings = new ArrayList<>();
+			for (int i = 0; i < files.size(); i++) {
+				final int index = i;
+				final File file = files.get(i);
+				readings.add(readerPool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException, InterruptedException {
+						queue.put(new ReadSample(index, fileReader
+								.readSample(file)));
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> reading : readings) {
+				reading.get();
+			}
+
+			for (int i = 0; i < extractors; i++) {
+				queue.put(END);
+			}
+
+			for (Future<Void> extraction : extractions) {
+				extraction.get();
+			}
+
+			if (failure.get() != null) {
+				throw new IllegalStateException("Signal processing failed",
+						failure.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Reading the samples was interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Signal processing failed",
+					e.getCause());
+		} finally {
+			// Stops the threads still waiting in the queue after a failure
+			readerPool.shutdownNow();
+			extractorPool.shutdownNow();
+		}
+
+		return features;
+	}
+}
@@ -6,10 +6,33 @@ import java.util.ArrayList;
  * @author enzoroiz
  *
  */
-@SuppressWarnings("unchecked")
 public class SignalProcessing {
+	/**
+	 * How a transform normalizes its result by the peak, i.e. the maximum
+	 * absolute value, which is tracked while the result is produced
+	 */
+	public enum Normalization {
+		// The result is not normalized
+		NONE,
+		// The result is a read-only view carrying the normalization as a scale
+		// factor, for consumers that only need summary statistics
+		LAZY,
+		// The result is scaled in place
+		IN_PLACE,
+		// The result is scaled in place and rounded to 5 decimal places, as
+		// the .dat outputs
+		ROUNDED
+	}
+
+	// Samples handled at a time by windowFeatures, small enough to stay in
+	// the cache while every window goes over them
+	private static final int FEATURE_BLOCK_SIZE = 4096;
+	// Features extracted from each sample, in the order of extractFeatures
+	public static final String[] FEATURE_NAMES = { "ENERGY", "MAGNITUDE",
+			"ZERO CROSSING RATE" };
+
 	// Attributes
-	private ArrayList<Double> sample;
+	private SignalBuffer sample;
 	private int audioSizeInMS;
 
 	/**
@@ -18,6 +41,15 @@ public class SignalProcessing {
 	 * @param audioSizeInMS
 	 */
 	public SignalProcessing(ArrayList<Double> sample, int audioSizeInMS) {
+		this(SignalBuffer.fromList(sample), audioSizeInMS);
+	}
+
+	/**
+	 * @param sample
+	 *            to analyse
+	 * @param audioSizeInMS
+	 */
+	public SignalProcessing(SignalBuffer sample, int audioSizeInMS) {
 		this.sample = sample;
 		this.audioSizeInMS = audioSizeInMS;
 	}
@@ -26,9 +58,23 @@ public class SignalProcessing {
 	 * @return the original signal normalized with the peak
 	 */
 	public ArrayList<Double> originalNormalized() {
-		ArrayList<Double> originalNormalized = new ArrayList<Double>();
-		originalNormalized = (ArrayList<Double>) sample.clone();
-		return normalizeSignal(originalNormalized);
+		return originalNormalizedBuffer().toList();
+	}
+
+	/**
+	 * @return the original signal normalized with the peak
+	 */
+	public SignalBuffer originalNormalizedBuffer() {
+		return originalNormalizedBuffer(Normalization.ROUNDED);
+	}
+
+	/**
+	 * @param normalization
+	 * @return the original signal normalized with the peak, a copy unless
+	 *         the normalization is lazy
+	 */
+	public SignalBuffer originalNormalizedBuffer(Normalization normalization) {
+		return normalize(sample, normalization);
 	}
 
 	/**
@@ -38,32 +84,102 @@ public class SignalProcessing {
 	 * @return samples shifted by delay
 	 */
 	public ArrayList<Double> idealDelay(int delay) {
-		ArrayList<Double> shiftedSample = new ArrayList<Double>();
-		shiftedSample = (ArrayList<Double>) sample.clone();
+		return idealDelayBuffer(delay).toList();
+	}
 
-		int shiftSize = (sample.size() * delay) / audioSizeInMS;
+	/**
+	 * Ideal delay
+	 * 
+	 * @param delay
+	 * @return samples shifted by delay
+	 */
+	public SignalBuffer idealDelayBuffer(int delay) {
+		return idealDelayBuffer(delay, Normalization.ROUNDED);
+	}
 
-		for (int i = 0; i < shiftSize; i++) {
-			shiftedSample.add(0, 0.0);
-			shiftedSample.remove(shiftedSample.size() - 1);
-		}
+	/**
+	 * Ideal delay
+	 * 
+	 * @param delay
+	 * @param normalization
+	 * @return samples shifted by delay, a copy unless the normalization is
+	 *         lazy
+	 */
+	public SignalBuffer idealDelayBuffer(int delay, Normalization normalization) {
+		return normalize(idealDelayView(delay), normalization);
+	}
+
+	/**
+	 * Ideal delay without copying nor normalizing the sample. The returned
+	 * view reads the original sample, so it can be given to another
+	 * SignalProcessing object to chain transforms
+	 * 
+	 * @param delay
+	 * @return a view of the samples shifted by delay
+	 */
+	public SignalBuffer idealDelayView(int delay) {
+		int shiftSize = (sample.length() * delay) / audioSizeInMS;
+
+		return sample.shifted(shiftSize);
+	}
 
-		return normalizeSignal(shiftedSample);
+	/**
+	 * Index the sample, so any window of the transforms can be queried in O(1)
+	 *
+	 * @return the prefix sums of the sample
+	 */
+	public SignalIndex buildIndex() {
+		return new SignalIndex(sample);
+	}
+
+	/**
+	 * @param window
+	 *            in milliseconds
+	 * @return the size of the window in samples
+	 */
+	public int windowSize(int window) {
+		return (sample.length() * window) / audioSizeInMS;
 	}
 
 	/**
 	 * Moving Average
-	 * 
+	 *
 	 * @param limit
 	 * @return the moving average sample
 	 */
 	public ArrayList<Double> movingAverage(int window) {
-		ArrayList<Double> movingAverage = new ArrayList<Double>();
+		return movingAverageBuffer(window).toList();
+	}
+
+	/**
+	 * Moving Average
+	 * 
+	 * @param window
+	 * @return the moving average sample
+	 */
+	public SignalBuffer movingAverageBuffer(int window) {
+		return movingAverageBuffer(window, Normalization.ROUNDED);
+	}
+
+	/**
+	 * Moving Average
+	 * 
+	 * @param window
+	 * @param normalization
+	 * @return the moving average sample
+	 */
+	public SignalBuffer movingAverageBuffer(int window,
+			Normalization normalization) {
+		int size = sample.length();
+		double[] movingAverage = new double[size];
 
-		int averageSize = (sample.size() * window) / audioSizeInMS;
+		int averageSize = (size * window) / audioSizeInMS;
 
 		int i;
+		int k = 0;
 		double sampleWindowSum = 0;
+		double average;
+		double peak = 0;
 
 		// Calculate moving average
 		for (i = 0; i < averageSize / 2; i++) {
@@ -71,22 +187,29 @@ public class SignalProcessing {
 		}
 
 		for (; i < averageSize; i++) {
-			movingAverage.add(sampleWindowSum / averageSize);
+			average = sampleWindowSum / averageSize;
+			movingAverage[k++] = average;
+			peak = Math.max(peak, Math.abs(average));
 			sampleWindowSum += sample.get(i);
 		}
 
-		for (; i < sample.size(); i++) {
-			movingAverage.add(sampleWindowSum / averageSize);
+		for (; i < size; i++) {
+			average = sampleWindowSum / averageSize;
+			movingAverage[k++] = average;
+			peak = Math.max(peak, Math.abs(average));
 			sampleWindowSum -= sample.get(i - averageSize);
 			sampleWindowSum += sample.get(i);
 		}
 
 		for (int j = 0; j < averageSize / 2; j++) {
-			movingAverage.add(sampleWindowSum / averageSize);
-			sampleWindowSum -= sample.get(sample.size() + j - averageSize);
+			average = sampleWindowSum / averageSize;
+			movingAverage[k++] = average;
+			peak = Math.max(peak, Math.abs(average));
+			sampleWindowSum -= sample.get(size + j - averageSize);
 		}
 
-		return normalizeSignal(movingAverage);
+		return normalizeSignal(new SignalBuffer(movingAverage), peak,
+				normalization);
 	}
 
 	/**
@@ -96,26 +219,53 @@ public class SignalProcessing {
 	 * @return the convolved signal
 	 */
 	public ArrayList<Double> convolution(int window) {
-		ArrayList<Double> convolution = new ArrayList<Double>();
+		return convolutionBuffer(window).toList();
+	}
+
+	/**
+	 * Convolution
+	 * 
+	 * @param window
+	 * @return the convolved signal
+	 */
+	public SignalBuffer convolutionBuffer(int window) {
+		return convolutionBuffer(window, Normalization.ROUNDED);
+	}
+
+	/**
+	 * Convolution
+	 * 
+	 * @param window
+	 * @param normalization
+	 * @return the convolved signal
+	 */
+	public SignalBuffer convolutionBuffer(int window,
+			Normalization normalization) {
+		int size = sample.length();
+		double[] convolution = new double[size];
 
-		int windowSize = (sample.size() * window) / audioSizeInMS;
+		int windowSize = (size * window) / audioSizeInMS;
 
 		int i;
 		double sampleWindowSum = 0;
+		double peak = 0;
 
 		// Calculate the convolution
 		for (i = 0; i < windowSize; i++) {
-			sampleWindowSum += (sample.get(i));
-			convolution.add(sampleWindowSum);
+			sampleWindowSum += sample.get(i);
+			convolution[i] = sampleWindowSum;
+			peak = Math.max(peak, Math.abs(sampleWindowSum));
 		}
 
-		for (; i < sample.size(); i++) {
-			sampleWindowSum -= (sample.get(i - windowSize));
-			sampleWindowSum += (sample.get(i));
-			convolution.add(sampleWindowSum);
+		for (; i < size; i++) {
+			sampleWindowSum -= sample.get(i - windowSize);
+			sampleWindowSum += sample.get(i);
+			convolution[i] = sampleWindowSum;
+			peak = Math.max(peak, Math.abs(sampleWindowSum));
 		}
 
-		return normalizeSignal(convolution);
+		return normalizeSignal(new SignalBuffer(convolution), peak,
+				normalization);
 	}
 
 	/**
@@ -125,24 +275,38 @@ public class SignalProcessing {
 	 * @return the energy of the original signal
 	 */
 	public ArrayList<Double> energy(int window) {
-		ArrayList<Double> energy = new ArrayList<Double>();
+		return energyBuffer(window).toList();
+	}
+
+	/**
+	 * Energy
+	 * 
+	 * @param window
+	 * @return the energy of the original signal
+	 */
+	public SignalBuffer energyBuffer(int window) {
+		int size = sample.length();
+		SignalBuffer energy = new SignalBuffer(size);
 
-		int windowSize = (sample.size() * window) / audioSizeInMS;
+		int windowSize = (size * window) / audioSizeInMS;
 
 		int i;
+		double x;
 		double sampleWindowSum = 0;
 
 		// Calculate energy
 		for (i = 0; i < windowSize; i++) {
-			sampleWindowSum += (Math.pow(sample.get(i), 2) / Math.pow(10, 4));
-			energy.add(sampleWindowSum);
+			x = sample.get(i);
+			sampleWindowSum += (x * x / 10000.0);
+			energy.set(i, sampleWindowSum);
 		}
 
-		for (; i < sample.size(); i++) {
-			sampleWindowSum -= (Math.pow(sample.get(i - windowSize), 2) / Math
-					.pow(10, 4));
-			sampleWindowSum += (Math.pow(sample.get(i), 2) / Math.pow(10, 4));
-			energy.add(sampleWindowSum);
+		for (; i < size; i++) {
+			x = sample.get(i - windowSize);
+			sampleWindowSum -= (x * x / 10000.0);
+			x = sample.get(i);
+			sampleWindowSum += (x * x / 10000.0);
+			energy.set(i, sampleWindowSum);
 		}
 
 		// return normalizeSignal(energy);
@@ -156,22 +320,33 @@ public class SignalProcessing {
 	 * @return the magnitude of the original signal
 	 */
 	public ArrayList<Double> magnitude(int window) {
-		ArrayList<Double> magnitude = new ArrayList<Double>();
+		return magnitudeBuffer(window).toList();
+	}
 
-		int windowSize = (sample.size() * window) / audioSizeInMS;
+	/**
+	 * Magnitude
+	 * 
+	 * @param window
+	 * @return the magnitude of the original signal
+	 */
+	public SignalBuffer magnitudeBuffer(int window) {
+		int size = sample.length();
+		SignalBuffer magnitude = new SignalBuffer(size);
+
+		int windowSize = (size * window) / audioSizeInMS;
 		int i;
 		double sampleWindowSum = 0;
 
 		// Calculate magnitude
 		for (i = 0; i < windowSize; i++) {
 			sampleWindowSum += Math.abs(sample.get(i));
-			magnitude.add(sampleWindowSum);
+			magnitude.set(i, sampleWindowSum);
 		}
 
-		for (; i < sample.size(); i++) {
+		for (; i < size; i++) {
 			sampleWindowSum -= Math.abs(sample.get(i - windowSize));
 			sampleWindowSum += Math.abs(sample.get(i));
-			magnitude.add(sampleWindowSum);
+			magnitude.set(i, sampleWindowSum);
 		}
 
 		// return normalizeSignal(magnitude);
@@ -185,61 +360,91 @@ public class SignalProcessing {
 	 * @return the ZCR
 	 */
 	public ArrayList<Double> zeroCrossingRate(int window) {
-		ArrayList<Double> zcr = new ArrayList<Double>();
-		ArrayList<Double> zcrAux = new ArrayList<Double>(30);
+		return zeroCrossingRateBuffer(window).toList();
+	}
 
-		int windowSize = (sample.size() * window) / audioSizeInMS;
+	/**
+	 * Zero Crossing Rate
+	 * 
+	 * @param window
+	 * @return the ZCR
+	 */
+	public SignalBuffer zeroCrossingRateBuffer(int window) {
+		SignalBuffer zcr = new SignalBuffer(sample.length());
+		zeroCrossingRate(window, zcr.array(), 0);
+
+		// return normalizeSignal(zcr);
+		return zcr;
+	}
+
+	/**
+	 * Zero Crossing Rate written into an array given by the caller. The
+	 * crossings inside the window are kept in a ring of booleans, so each
+	 * sample costs O(1) regardless of the window size
+	 * 
+	 * @param window
+	 * @param zcr
+	 *            array to store the ZCR of each sample
+	 * @param offset
+	 *            position in the array of the ZCR of the first sample
+	 */
+	public void zeroCrossingRate(int window, double[] zcr, int offset) {
+		int size = sample.length();
+
+		if (offset < 0 || offset + size > zcr.length) {
+			throw new IndexOutOfBoundsException("The array has "
+					+ zcr.length + " positions, " + (offset + size)
+					+ " needed");
+		}
+
+		int windowSize = (size * window) / audioSizeInMS;
+		boolean[] crossings = new boolean[windowSize];
 
 		int i;
+		int ringIndex = 0;
 		double zcrSampleWindowSum = 0;
 		boolean sampleBeforeIsPositive = true;
 		boolean sampleNowIsPositive;
+		boolean crossed;
 
 		// Calculate zero crossing rate
 		for (i = 0; i < windowSize; i++) {
-			if (sample.get(i) >= 0) {
-				sampleNowIsPositive = true;
-			} else {
-				sampleNowIsPositive = false;
-			}
+			sampleNowIsPositive = sample.get(i) >= 0;
+			crossed = sampleNowIsPositive != sampleBeforeIsPositive;
 
-			if (sampleNowIsPositive != sampleBeforeIsPositive) {
+			if (crossed) {
 				zcrSampleWindowSum += 1;
-				zcrAux.add(1.0);
-			} else {
-				zcrAux.add(0.0);
 			}
 
+			crossings[i] = crossed;
 			sampleBeforeIsPositive = sampleNowIsPositive;
 
-			zcr.add(zcrSampleWindowSum/(2 * window));
+			zcr[offset + i] = zcrSampleWindowSum / (2 * window);
 		}
 
-		for (; i < sample.size(); i++) {
-			if (sample.get(i) >= 0) {
-				sampleNowIsPositive = true;
-			} else {
-				sampleNowIsPositive = false;
+		for (; i < size; i++) {
+			sampleNowIsPositive = sample.get(i) >= 0;
+			crossed = sampleNowIsPositive != sampleBeforeIsPositive;
+
+			// Replace the oldest crossing of the window
+			if (crossings[ringIndex]) {
+				zcrSampleWindowSum -= 1;
 			}
 
-			if (sampleNowIsPositive != sampleBeforeIsPositive) {
+			if (crossed) {
 				zcrSampleWindowSum += 1;
-				zcrSampleWindowSum -= zcrAux.get(0);
-				zcrAux.add(1.0);
-				zcrAux.remove(0);
-			} else {
-				zcrSampleWindowSum -= zcrAux.get(0);
-				zcrAux.add(0.0);
-				zcrAux.remove(0);
+			}
+
+			crossings[ringIndex] = crossed;
+			ringIndex++;
+			if (ringIndex == windowSize) {
+				ringIndex = 0;
 			}
 
 			sampleBeforeIsPositive = sampleNowIsPositive;
 
-			zcr.add(zcrSampleWindowSum/(2 * window));
+			zcr[offset + i] = zcrSampleWindowSum / (2 * window);
 		}
-
-		// return normalizeSignal(zcr);
-		return zcr;
 	}
 
 	/**
@@ -249,30 +454,112 @@ public class SignalProcessing {
 	 * @return a normalized array
 	 */
 	public ArrayList<Double> normalizeSignal(ArrayList<Double> arrayToNormalize) {
-		int maxValueIndex = 0;
-		double maxValue;
-		double aux;
+		SignalBuffer normalized = normalizeSignal(SignalBuffer
+				.fromList(arrayToNormalize));
 
-		// Get the max absolute value of the array
 		for (int i = 0; i < arrayToNormalize.size(); i++) {
-			if (Math.abs(arrayToNormalize.get(i)) > Math.abs(arrayToNormalize
-					.get(maxValueIndex))) {
-				maxValueIndex = i;
-			}
+			arrayToNormalize.set(i, normalized.get(i));
 		}
 
-		maxValue = Math.abs(arrayToNormalize.get(maxValueIndex))
-				/ Math.pow(10.0, 1.0);
+		return arrayToNormalize;
+	}
 
-		// Normalize the other values
-		for (int i = 0; i < arrayToNormalize.size(); i++) {
-			aux = arrayToNormalize.get(i) / maxValue;
-			aux = Math.round(aux * 100000.0) / 100000.0;
-			arrayToNormalize.set(i, aux);
+	/**
+	 * Normalize the signal by the maximum absolute value, in place. A scaled
+	 * view is read-only, so it is normalized into a copy
+	 * 
+	 * @param bufferToNormalize
+	 * @return the same buffer normalized
+	 */
+	public SignalBuffer normalizeSignal(SignalBuffer bufferToNormalize) {
+		if (bufferToNormalize.scale() != 1.0) {
+			bufferToNormalize = bufferToNormalize.copy();
 		}
 
-		return arrayToNormalize;
+		return normalizeSignal(bufferToNormalize, peak(bufferToNormalize),
+				Normalization.ROUNDED);
+	}
+
+	/**
+	 * Normalize a copy of the signal, or a view of it if the normalization is
+	 * lazy
+	 * 
+	 * @param signal
+	 * @param normalization
+	 * @return the signal normalized
+	 */
+	private SignalBuffer normalize(SignalBuffer signal,
+			Normalization normalization) {
+		if (normalization == Normalization.LAZY
+				|| normalization == Normalization.NONE) {
+			return normalizeSignal(signal, peak(signal), normalization);
+		}
 
+		SignalBuffer copy = signal.copy();
+		return normalizeSignal(copy, peak(copy), normalization);
+	}
+
+	/**
+	 * Normalize the signal given its peak, already known
+	 * 
+	 * @param bufferToNormalize
+	 *            not scaled, unless the normalization is lazy
+	 * @param peak
+	 *            maximum absolute value of the buffer
+	 * @param normalization
+	 * @return the buffer normalized in place or, if the normalization is
+	 *         lazy, a view of it; the buffer unchanged if its peak is 0
+	 */
+	private static SignalBuffer normalizeSignal(
+			SignalBuffer bufferToNormalize, double peak,
+			Normalization normalization) {
+		double maxValue = peak / Math.pow(10.0, 1.0);
+
+		// An all-zero signal, e.g. digital silence, has nothing to scale and
+		// dividing by its peak would turn every sample into NaN
+		if (normalization == Normalization.NONE || peak == 0) {
+			return bufferToNormalize;
+		}
+		if (normalization == Normalization.LAZY) {
+			return bufferToNormalize.scaled(1 / maxValue);
+		}
+
+		// The leading zeros stay zeros
+		double[] data = bufferToNormalize.array();
+		int from = bufferToNormalize.offset();
+		int to = from + bufferToNormalize.length()
+				- bufferToNormalize.leadingZeros();
+
+		if (normalization == Normalization.IN_PLACE) {
+			double factor = 1 / maxValue;
+			for (int i = from; i < to; i++) {
+				data[i] *= factor;
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				double aux = data[i] / maxValue;
+				data[i] = Math.round(aux * 100000.0) / 100000.0;
+			}
+		}
+
+		return bufferToNormalize;
+	}
+
+	/**
+	 * @param signal
+	 * @return the maximum absolute value of the signal
+	 */
+	private static double peak(SignalBuffer signal) {
+		double[] data = signal.array();
+		int from = signal.offset();
+		int to = from + signal.length() - signal.leadingZeros();
+		double peak = 0;
+
+		for (int i = from; i < to; i++) {
+			peak = Math.max(peak, Math.abs(data[i]));
+		}
+
+		return peak * Math.abs(signal.scale());
 	}
 
 	/**
@@ -288,42 +575,374 @@ public class SignalProcessing {
 	public static ArrayList<SignalInfo> processSignals(
 			ArrayList<ArrayList<Double>> samples, int audioSizeInMS,
 			int windowSize) {
-		ArrayList<SignalProcessing> signalProcessing = new ArrayList<>();
-		ArrayList<SignalInfo> signalInfos = new ArrayList<>();
+		ArrayList<SignalBuffer> signalBuffers = new ArrayList<>();
+
+		for (int i = 0; i < samples.size(); i++) {
+			signalBuffers.add(SignalBuffer.fromList(samples.get(i)));
+		}
+
+		return processSignalBuffers(signalBuffers, audioSizeInMS, windowSize);
+	}
+
+	/**
+	 * 
+	 * @param samples
+	 *            read from files
+	 * @param audioSizeInMS
+	 *            of the files
+	 * @return a list containing log from the average of energy and magnitude
+	 *         signals, and the average of zero crossing rate for each of the
+	 *         signals
+	 */
+	public static ArrayList<SignalInfo> processSignalBuffers(
+			ArrayList<SignalBuffer> samples, int audioSizeInMS, int windowSize) {
+		ArrayList<SignalInfo> signalInfos = new ArrayList<>(samples.size());
 
 		// For each signal
 		for (int i = 0; i < samples.size(); i++) {
-			signalProcessing.add(new SignalProcessing(samples.get(i),
-					audioSizeInMS));
-			signalInfos.add(signalProcessing.get(i).getSignalInfos(
-					signalProcessing.get(i), windowSize));
+			signalInfos.add(new SignalProcessing(samples.get(i), audioSizeInMS)
+					.getSignalInfos(windowSize));
 		}
 
 		return signalInfos;
 	}
 
 	/**
-	 * Create Stat objects to compute the log and the mean of the signals
+	 * Compute the log and the mean of the energy, magnitude and zero crossing
+	 * rate signals without storing the intermediate signals, with the kernels
+	 * chosen by FeatureKernels.get
 	 * 
-	 * @param signalProcessing
-	 *            object
-	 * @param windowSize
+	 * @param window
 	 * @return SignalInfo containing log from the average of energy and
 	 *         magnitude signals, and the average of zero crossing rate for each
 	 *         of the signals
 	 */
-	private SignalInfo getSignalInfos(SignalProcessing signalProcessing,
-			int windowSize) {
-		double energyLog = new Stat(signalProcessing.energy(windowSize))
-				.getLog();
-		double magnitudeLog = new Stat(signalProcessing.magnitude(windowSize))
-				.getLog();
-		double zeroCrossingRateMean = new Stat(
-				signalProcessing.zeroCrossingRate(windowSize)).getMean();
-		SignalInfo signalInfo = new SignalInfo(energyLog, magnitudeLog,
-				zeroCrossingRateMean);
-
-		return signalInfo;
+	public SignalInfo getSignalInfos(int window) {
+		return getSignalInfos(window, FeatureKernels.get());
+	}
+
+	/**
+	 * Compute the information of the sample as getSignalInfos
+	 * 
+	 * @param window
+	 * @param kernels
+	 *            computing the sums
+	 * @return SignalInfo containing log from the average of energy and
+	 *         magnitude signals, and the average of zero crossing rate for each
+	 *         of the signals
+	 */
+	public SignalInfo getSignalInfos(int window, FeatureKernels kernels) {
+		double[] features = new double[FEATURE_NAMES.length];
+		extractFeatures(window, kernels, features);
+
+		return new SignalInfo(features);
+	}
+
+	/**
+	 * Extract the features of the sample into a row of the matrix, with the
+	 * kernels chosen by FeatureKernels.get. The label of the row is kept
+	 * 
+	 * @param window
+	 * @param features
+	 *            matrix with the columns of FEATURE_NAMES
+	 * @param row
+	 *            where the features are written
+	 */
+	public void extractFeatures(int window, FeatureMatrix features, int row) {
+		double[] values = new double[FEATURE_NAMES.length];
+		extractFeatures(window, FeatureKernels.get(), values);
+		features.setRow(row, values);
+	}
+
+	/**
+	 * Compute the features of the sample, in the order of FEATURE_NAMES: the
+	 * log of the mean of the energy and magnitude signals and the mean of the
+	 * zero crossing rate signal. A sample entering the window is in the
+	 * window of the following windowSize positions, or until the end of the
+	 * sample, so the sum of a windowed signal over the sample is the sum of
+	 * the samples weighted by the positions they are in. All the samples but
+	 * the last windowSize - 1 have the same weight, so most of the work is one
+	 * sum over a contiguous range done by the kernels, and the rest is
+	 * weighted one by one. The zero crossing rate of each position is added
+	 * in order, as SignalStream, so its mean rounds the same
+	 * 
+	 * @param window
+	 * @param kernels
+	 *            computing the sums
+	 * @param features
+	 *            to store the value of each feature
+	 */
+	public void extractFeatures(int window, FeatureKernels kernels,
+			double[] features) {
+		if (features.length != FEATURE_NAMES.length) {
+			throw new IllegalArgumentException("Expected "
+					+ FEATURE_NAMES.length + " features, got "
+					+ features.length);
+		}
+
+		int size = sample.length();
+		int windowSize = (size * window) / audioSizeInMS;
+		if (windowSize <= 0 || size <= 0) {
+			throw new IllegalArgumentException("Window of " + windowSize
+					+ " and frame of " + size + " samples are not valid");
+		}
+
+		// The samples read in place when the buffer is a plain range
+		double[] x;
+		int offset;
+		if (sample.leadingZeros() == 0 && sample.scale() == 1.0) {
+			x = sample.array();
+			offset = sample.offset();
+		} else {
+			x = sample.toArray();
+			offset = 0;
+		}
+		int end = offset + size;
+
+		// Samples in windowSize positions
+		int full = offset + Math.max(size - windowSize + 1, 0);
+		double squares = windowSize * kernels.sumOfSquares(x, offset, full);
+		double magnitude = windowSize * kernels.absoluteSum(x, offset, full);
+
+		// Samples in fewer positions, as the sample ends before their window
+		for (int i = full; i < end; i++) {
+			double weight = end - i;
+			squares += x[i] * x[i] * weight;
+			magnitude += Math.abs(x[i]) * weight;
+		}
+
+		// Crossings in the window of each position
+		int windowCrossings = 0;
+		double zcr = 0;
+		for (int i = offset; i < end; i++) {
+			if (i - windowSize >= offset
+					&& crossed(x, offset, i - windowSize)) {
+				windowCrossings--;
+			}
+			if (crossed(x, offset, i)) {
+				windowCrossings++;
+			}
+			zcr += windowCrossings / (double) (2 * window);
+		}
+
+		features[0] = Stat.roundedLog(Stat.roundedMean(squares / 10000.0,
+				size));
+		features[1] = Stat.roundedLog(Stat.roundedMean(magnitude, size));
+		features[2] = Stat.roundedMean(zcr, size);
+	}
+
+	/**
+	 * @param x
+	 *            the samples
+	 * @param offset
+	 *            of the first sample, which is compared with a positive one
+	 * @param i
+	 *            position
+	 * @return if the sample at the position has a sign different from the
+	 *         one before it
+	 */
+	private static boolean crossed(double[] x, int offset, int i) {
+		boolean sampleBeforeIsPositive = i == offset || x[i - 1] >= 0;
+		return (x[i] >= 0) != sampleBeforeIsPositive;
+	}
+
+	/**
+	 * Running sums of one window, kept between the blocks of windowFeatures
+	 */
+	private static class WindowSums {
+		private int window;
+		private int windowSize;
+		private double sum;
+		private double energy;
+		private double magnitude;
+		private double zcr;
+		private double energyTotal;
+		private double magnitudeTotal;
+		private double zcrTotal;
+		private double movingAveragePeak;
+		private double convolutionPeak;
+		private double[] movingAverage;
+		private double[] convolution;
+		private double[] energyBuffer;
+		private double[] magnitudeBuffer;
+		private double[] zcrBuffer;
+	}
+
+	/**
+	 * Compute the moving average, convolution, energy, magnitude and zero
+	 * crossing rate signals and the information of the sample for several
+	 * windows in a single traversal of the sample. The sample is walked in
+	 * blocks small enough to stay in the cache and each block is added to the
+	 * running sums of all the windows, in the same order as the methods of
+	 * each transform, so the results are the same as calling them for each
+	 * window
+	 *
+	 * @param windows
+	 *            in milliseconds
+	 * @return the features of each window, in the order of the windows
+	 */
+	public ArrayList<WindowFeatures> windowFeatures(int... windows) {
+		return windowFeatures(Normalization.ROUNDED, windows);
+	}
+
+	/**
+	 * Compute the features of several windows in a single traversal of the
+	 * sample, as windowFeatures
+	 *
+	 * @param normalization
+	 *            of the moving average and the convolution
+	 * @param windows
+	 *            in milliseconds
+	 * @return the features of each window, in the order of the windows
+	 */
+	public ArrayList<WindowFeatures> windowFeatures(
+			Normalization normalization, int... windows) {
+		int size = sample.length();
+		double[] x = sample.toArray();
+		WindowSums[] sums = new WindowSums[windows.length];
+
+		for (int w = 0; w < windows.length; w++) {
+			WindowSums windowSums = new WindowSums();
+			windowSums.window = windows[w];
+			windowSums.windowSize = (size * windows[w]) / audioSizeInMS;
+			if (windowSums.windowSize < 1 || windowSums.windowSize > size) {
+				throw new IllegalArgumentException("Window of " + windows[w]
+						+ " ms does not fit a sample of " + audioSizeInMS
+						+ " ms");
+			}
+
+			windowSums.movingAverage = new double[size];
+			windowSums.convolution = new double[size];
+			windowSums.energyBuffer = new double[size];
+			windowSums.magnitudeBuffer = new double[size];
+			windowSums.zcrBuffer = new double[size];
+			sums[w] = windowSums;
+		}
+
+		// 1 where the sign of a sample differs from the one before it, the
+		// first sample being compared with a positive one
+		byte[] crossings = new byte[size];
+		boolean sampleBeforeIsPositive = true;
+		for (int i = 0; i < size; i++) {
+			boolean sampleNowIsPositive = x[i] >= 0;
+			crossings[i] = (byte) (sampleNowIsPositive != sampleBeforeIsPositive ? 1
+					: 0);
+			sampleBeforeIsPositive = sampleNowIsPositive;
+		}
+
+		for (int from = 0; from < size; from += FEATURE_BLOCK_SIZE) {
+			int to = Math.min(from + FEATURE_BLOCK_SIZE, size);
+			for (WindowSums s : sums) {
+				addBlock(s, x, crossings, from, to);
+			}
+		}
+
+		ArrayList<WindowFeatures> features = new ArrayList<>(windows.length);
+		for (WindowSums s : sums) {
+			// Last positions of the moving average, past the end of the sample
+			double sum = s.sum;
+			int half = s.windowSize / 2;
+			for (int j = 1; j < half; j++) {
+				sum -= x[size + j - 1 - s.windowSize];
+				double average = sum / s.windowSize;
+				s.movingAverage[size - half + j] = average;
+				s.movingAveragePeak = Math.max(s.movingAveragePeak,
+						Math.abs(average));
+			}
+
+			features.add(new WindowFeatures(s.window,
+					normalizeSignal(new SignalBuffer(s.movingAverage),
+							s.movingAveragePeak, normalization),
+					normalizeSignal(new SignalBuffer(s.convolution),
+							s.convolutionPeak, normalization),
+					new SignalBuffer(s.energyBuffer), new SignalBuffer(
+							s.magnitudeBuffer), new SignalBuffer(s.zcrBuffer),
+					new SignalInfo(
+							Stat.roundedLog(Stat.roundedMean(s.energyTotal,
+									size)),
+							Stat.roundedLog(Stat.roundedMean(s.magnitudeTotal,
+									size)),
+							Stat.roundedMean(s.zcrTotal, size))));
+		}
+
+		return features;
+	}
+
+	/**
+	 * Advance the running sums of one window over a block of the sample
+	 *
+	 * @param s
+	 *            sums of the window
+	 * @param x
+	 *            the sample
+	 * @param crossings
+	 *            of the sample
+	 * @param from
+	 *            first sample of the block
+	 * @param to
+	 *            sample after the block
+	 */
+	private static void addBlock(WindowSums s, double[] x, byte[] crossings,
+			int from, int to) {
+		int windowSize = s.windowSize;
+		int half = windowSize / 2;
+		double zcrDivisor = 2 * s.window;
+		double sum = s.sum;
+		double energy = s.energy;
+		double magnitude = s.magnitude;
+		double zcr = s.zcr;
+		double energyTotal = s.energyTotal;
+		double magnitudeTotal = s.magnitudeTotal;
+		double zcrTotal = s.zcrTotal;
+		double movingAveragePeak = s.movingAveragePeak;
+		double convolutionPeak = s.convolutionPeak;
+
+		for (int i = from; i < to; i++) {
+			// Remove the sample leaving the window
+			if (i >= windowSize) {
+				double old = x[i - windowSize];
+				sum -= old;
+				energy -= (old * old / 10000.0);
+				magnitude -= Math.abs(old);
+				zcr -= crossings[i - windowSize];
+			}
+
+			double now = x[i];
+			sum += now;
+			energy += (now * now / 10000.0);
+			magnitude += Math.abs(now);
+			zcr += crossings[i];
+
+			s.convolution[i] = sum;
+			convolutionPeak = Math.max(convolutionPeak, Math.abs(sum));
+			s.energyBuffer[i] = energy;
+			s.magnitudeBuffer[i] = magnitude;
+			double zcrRate = zcr / zcrDivisor;
+			s.zcrBuffer[i] = zcrRate;
+
+			// The moving average is centred on the window
+			int k = i - half + 1;
+			if (k >= 0 && k < x.length) {
+				double average = sum / windowSize;
+				s.movingAverage[k] = average;
+				movingAveragePeak = Math.max(movingAveragePeak,
+						Math.abs(average));
+			}
+
+			energyTotal += energy;
+			magnitudeTotal += magnitude;
+			zcrTotal += zcrRate;
+		}
+
+		s.sum = sum;
+		s.energy = energy;
+		s.magnitude = magnitude;
+		s.zcr = zcr;
+		s.energyTotal = energyTotal;
+		s.magnitudeTotal = magnitudeTotal;
+		s.zcrTotal = zcrTotal;
+		s.movingAveragePeak = movingAveragePeak;
+		s.convolutionPeak = convolutionPeak;
 	}
 
 }
@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+
+/**
+ * Class that extracts the information of a signal received in chunks, as
+ * from a live audio feed. The windows of energy, magnitude and zero crossing
+ * rate are kept across chunks and one SignalInfo is produced for each frame
+ * as soon as its last sample arrives. The memory used depends only on the
+ * window size
+ *
+ * @author enzoroiz
+ *
+ */
+public class SignalStream {
+	/**
+	 * Instance fields
+	 */
+	private int window;
+	private int windowSize;
+	private int frameSize;
+	private boolean windowPerFrame;
+
+	// Window state, shared by consecutive frames unless windowPerFrame
+	private double[] windowSamples;
+	private boolean[] windowCrossings;
+	private int ringIndex;
+	// Samples in the window, up to windowSize
+	private int windowFill;
+	private long samplesProcessed;
+	private double energyWindowSum;
+	private double magnitudeWindowSum;
+	private double zcrWindowSum;
+	private boolean sampleBeforeIsPositive;
+
+	// Frame state
+	private int frameSamples;
+	private long framesProcessed;
+	private double energySum;
+	private double magnitudeSum;
+	private double zcrSum;
+
+	/**
+	 * Constructor
+	 *
+	 * @param sampleRate
+	 *            in samples per second
+	 * @param window
+	 *            in milliseconds
+	 * @param frame
+	 *            in milliseconds
+	 */
+	public SignalStream(int sampleRate, int window, int frame) {
+		this(sampleRate, window, frame, false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param sampleRate
+	 *            in samples per second
+	 * @param window
+	 *            in milliseconds
+	 * @param frame
+	 *            in milliseconds
+	 * @param windowPerFrame
+	 *            if the windows start empty in each frame, so the information
+	 *            of a frame is the one of SignalProcessing on the frame alone,
+	 *            instead of continuing from the frame before
+	 */
+	public SignalStream(int sampleRate, int window, int frame,
+			boolean windowPerFrame) {
+		initialise((int) ((long) sampleRate * window / 1000), window,
+				(int) ((long) sampleRate * frame / 1000));
+		this.windowPerFrame = windowPerFrame;
+	}
+
+	private SignalStream() {
+	}
+
+	/**
+	 * Create a stream given the sizes in samples
+	 *
+	 * @param windowSize
+	 *            in samples
+	 * @param window
+	 *            in milliseconds, used to compute the zero crossing rate
+	 * @param frameSize
+	 *            in samples
+	 * @return the stream
+	 */
+	static SignalStream ofSizes(int windowSize, int window, int frameSize) {
+		SignalStream signalStream = new SignalStream();
+		signalStream.initialise(windowSize, window, frameSize);
+		return signalStream;
+	}
+
+	/**
+	 * @param windowSize
+	 *            in samples
+	 * @param window
+	 *            in milliseconds
+	 * @param frameSize
+	 *            in samples
+	 */
+	private void initialise(int windowSize, int window, int frameSize) {
+		if (windowSize <= 0 || frameSize <= 0) {
+			throw new IllegalArgumentException("Window of " + windowSize
+					+ " and frame of " + frameSize
+					+ " samples are not valid");
+		}
+
+		this.window = window;
+		this.windowSize = windowSize;
+		this.frameSize = frameSize;
+		this.windowSamples = new double[windowSize];
+		this.windowCrossings = new boolean[windowSize];
+		reset();
+	}
+
+	/**
+	 * Discard every sample received so far
+	 */
+	public void reset() {
+		resetWindow();
+		samplesProcessed = 0;
+		frameSamples = 0;
+		framesProcessed = 0;
+		energySum = 0;
+		magnitudeSum = 0;
+		zcrSum = 0;
+	}
+
+	/**
+	 * Empty the windows, as at the start of the stream
+	 */
+	private void resetWindow() {
+		ringIndex = 0;
+		windowFill = 0;
+		energyWindowSum = 0;
+		magnitudeWindowSum = 0;
+		zcrWindowSum = 0;
+		sampleBeforeIsPositive = true;
+	}
+
+	/**
+	 * @param chunk
+	 *            of samples following the ones already received
+	 * @return the information of each frame completed by this chunk
+	 */
+	public ArrayList<SignalInfo> process(SignalBuffer chunk) {
+		ArrayList<SignalInfo> frames = new ArrayList<>();
+
+		for (int i = 0; i < chunk.length(); i++) {
+			SignalInfo frame = add(chunk.get(i));
+			if (frame != null) {
+				frames.add(frame);
+			}
+		}
+
+		return frames;
+	}
+
+	/**
+	 * @param chunk
+	 *            array containing the samples
+	 * @param offset
+	 *            of the first sample in the array
+	 * @param length
+	 *            number of samples
+	 * @return the information of each frame completed by this chunk
+	 */
+	public ArrayList<SignalInfo> process(double[] chunk, int offset, int length) {
+		return process(new SignalBuffer(chunk, offset, length));
+	}
+
+	/**
+	 * Add one sample to the window and to the current frame
+	 *
+	 * @param x
+	 *            the sample
+	 * @return the information of the frame if this sample completed it, null
+	 *         otherwise
+	 */
+	public SignalInfo add(double x) {
+		boolean sampleNowIsPositive = x >= 0;
+		boolean crossed = sampleNowIsPositive != sampleBeforeIsPositive;
+		sampleBeforeIsPositive = sampleNowIsPositive;
+
+		// Remove the sample leaving the window
+		if (windowFill == windowSize) {
+			double old = windowSamples[ringIndex];
+			energyWindowSum -= (old * old / 10000.0);
+			magnitudeWindowSum -= Math.abs(old);
+			if (windowCrossings[ringIndex]) {
+				zcrWindowSum -= 1;
+			}
+		}
+
+		// Add the sample entering the window
+		energyWindowSum += (x * x / 10000.0);
+		magnitudeWindowSum += Math.abs(x);
+		if (crossed) {
+			zcrWindowSum += 1;
+		}
+
+		windowSamples[ringIndex] = x;
+		windowCrossings[ringIndex] = crossed;
+		ringIndex++;
+		if (ringIndex == windowSize) {
+			ringIndex = 0;
+		}
+		if (windowFill < windowSize) {
+			windowFill++;
+		}
+		samplesProcessed++;
+
+		energySum += energyWindowSum;
+		magnitudeSum += magnitudeWindowSum;
+		zcrSum += zcrWindowSum / (2 * window);
+		frameSamples++;
+
+		if (frameSamples == frameSize) {
+			return finishFrame();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finish the current frame even if it is not complete, e.g. at the end of
+	 * the stream
+	 *
+	 * @return the information of the samples of the current frame, null if
+	 *         there is none
+	 */
+	public SignalInfo flush() {
+		if (frameSamples == 0) {
+			return null;
+		}
+
+		return finishFrame();
+	}
+
+	/**
+	 * @return the information of the current frame, starting a new one
+	 */
+	private SignalInfo finishFrame() {
+		SignalInfo signalInfo = new SignalInfo(
+				Stat.roundedLog(Stat.roundedMean(energySum, frameSamples)),
+				Stat.roundedLog(Stat.roundedMean(magnitudeSum, frameSamples)),
+				Stat.roundedMean(zcrSum, frameSamples));
+
+		frameSamples = 0;
+		framesProcessed++;
+		energySum = 0;
+		magnitudeSum = 0;
+		zcrSum = 0;
+		if (windowPerFrame) {
+			resetWindow();
+		}
+
+		return signalInfo;
+	}
+
+	/**
+	 * @return the number of frames produced so far
+	 */
+	public long getFramesProcessed() {
+		return framesProcessed;
+	}
+
+	/**
+	 * @return the number of samples received so far
+	 */
+	public long getSamplesProcessed() {
+		return samplesProcessed;
+	}
+
+	/**
+	 * @return the size of a frame in samples
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Class that splits a long recording into speech segments. The recording is
+ * cut into consecutive frames whose information is extracted by a
+ * SignalStream, with the windows starting empty in each frame as in the
+ * signals used for training. Each frame is classified by a trained model and
+ * the speech frames are merged into segments. A segment stays open during a
+ * few silence frames, the hangover, so short pauses do not split it. Each
+ * segment is given to the listener as soon as it closes and the memory used
+ * does not depend on the length of the recording
+ *
+ * @author enzoroiz
+ *
+ */
+public class SpeechSegmenter {
+	/**
+	 * Receives the speech segments in the order of the recording
+	 */
+	public interface SegmentListener {
+		/**
+		 * @param start
+		 *            of the segment in seconds
+		 * @param end
+		 *            of the segment in seconds
+		 */
+		void segment(double start, double end);
+	}
+
+	/**
+	 * Instance fields
+	 */
+	private NaiveBayesModel model;
+	private SignalStream signalStream;
+	private SegmentListener listener;
+	private int sampleRate;
+	private int hangoverFrames;
+
+	// First sample of the current frame
+	private long frameStart;
+	// First sample of the open segment, -1 if there is none
+	private long segmentStart;
+	// Sample after the last speech frame of the open segment
+	private long segmentEnd;
+	private int silenceFrames;
+	private long speechFrames;
+
+	/**
+	 * Constructor
+	 *
+	 * @param model
+	 *            trained, with the window used to extract its information
+	 * @param sampleRate
+	 *            of the recording in samples per second
+	 * @param frame
+	 *            in milliseconds, usually the size of the training signals
+	 * @param hangoverFrames
+	 *            number of silence frames that do not close a segment
+	 * @param listener
+	 */
+	public SpeechSegmenter(NaiveBayesModel model, int sampleRate, int frame,
+			int hangoverFrames, SegmentListener listener) {
+		if (model.getWindowSize() <= 0) {
+			throw new IllegalArgumentException(
+					"The model does not have the window used to train it");
+		}
+
+		this.model = model;
+		// Each frame is extracted alone, as the signals used to train the
+		// model
+		this.signalStream = new SignalStream(sampleRate, model.getWindowSize(),
+				frame, true);
+		this.listener = listener;
+		this.sampleRate = sampleRate;
+		this.hangoverFrames = hangoverFrames;
+		this.segmentStart = -1;
+	}
+
+	/**
+	 * @param samples
+	 *            following the ones already received
+	 * @param length
+	 *            number of samples in the array
+	 */
+	public void process(double[] samples, int length) {
+		for (int i = 0; i < length; i++) {
+			SignalInfo frame = signalStream.add(samples[i]);
+			if (frame != null) {
+				classifyFrame(frame);
+			}
+		}
+	}
+
+	/**
+	 * Classify the last incomplete frame and close the open segment, at the
+	 * end of the recording
+	 */
+	public void finish() {
+		SignalInfo frame = signalStream.flush();
+		if (frame != null) {
+			classifyFrame(frame);
+		}
+
+		closeSegment();
+	}
+
+	/**
+	 * @param frame
+	 *            information of the frame just completed
+	 */
+	private void classifyFrame(SignalInfo frame) {
+		long frameEnd = signalStream.getSamplesProcessed();
+
+		if (model.classify(frame) == NaiveBayesModel.SPEECH) {
+			if (segmentStart < 0) {
+				segmentStart = frameStart;
+			}
+			segmentEnd = frameEnd;
+			silenceFrames = 0;
+			speechFrames++;
+		} else if (segmentStart >= 0 && ++silenceFrames > hangoverFrames) {
+			closeSegment();
+		}
+
+		frameStart = frameEnd;
+	}
+
+	/**
+	 * Give the open segment, if any, to the listener
+	 */
+	private void closeSegment() {
+		if (segmentStart < 0) {
+			return;
+		}
+
+		listener.segment((double) segmentStart / sampleRate,
+				(double) segmentEnd / sampleRate);
+		segmentStart = -1;
+		silenceFrames = 0;
+	}
+
+	/**
+	 * @return the number of frames classified so far
+	 */
+	public long getFramesProcessed() {
+		return signalStream.getFramesProcessed();
+	}
+
+	/**
+	 * @return the number of frames classified as speech so far
+	 */
+	public long getSpeechFrames() {
+		return speechFrames;
+	}
+
+	/**
+	 * @return the seconds of audio received so far
+	 */
+	public double getSecondsProcessed() {
+		return (double) signalStream.getSamplesProcessed() / sampleRate;
+	}
+}
@@ -1,19 +1,35 @@
 import java.util.ArrayList;
 
 /**
- * Class that computes statistics
+ * Class that computes statistics. The numbers are accumulated online with
+ * Welford's update, so only the count, the mean and the sum of the squared
+ * differences to the mean are kept, and two accumulators can be merged with
+ * Chan's update, e.g. the partial results of different threads or runs
  * 
  * @author enzoroiz
  *
  */
 public class Stat {
+	/**
+	 * Final fields
+	 */
+	// Numbers added at a time by addAll before merging them
+	private static final int BLOCK_SIZE = 1024;
+
 	/**
 	 * instance fields
 	 */
-	private ArrayList<Double> signalNormalized;
+	private long count;
 	private double mean;
-	private double log10;
-	private double variance;
+	// Sum of the squared differences to the mean
+	private double squares;
+	private GaussianModel gaussianModel;
+
+	/**
+	 * Constructor of an empty accumulator
+	 */
+	public Stat() {
+	}
 
 	/**
 	 * Constructor given
@@ -21,44 +37,137 @@ public class Stat {
 	 * @param signalNormalized
 	 *            array list of double
 	 */
-	@SuppressWarnings("unchecked")
 	public Stat(ArrayList<Double> signalNormalized) {
-		this.signalNormalized = (ArrayList<Double>) signalNormalized.clone();
-		this.mean = mean();
-		this.log10 = log(mean);
+		for (double number : signalNormalized) {
+			add(number);
+		}
+	}
+
+	/**
+	 * Constructor given
+	 * 
+	 * @param signalNormalized
+	 *            buffer of primitive doubles
+	 */
+	public Stat(SignalBuffer signalNormalized) {
+		int zeros = signalNormalized.leadingZeros();
+		merge(zeros, 0, 0);
+		addAll(signalNormalized.array(), signalNormalized.offset(),
+				signalNormalized.length() - zeros);
+
+		// The scale of a lazily normalized buffer is applied to the
+		// statistics instead of to every sample
+		double scale = signalNormalized.scale();
+		mean *= scale;
+		squares *= scale * scale;
+	}
+
+	/**
+	 * @param number
+	 *            to add to the statistics
+	 */
+	public void add(double number) {
+		count++;
+		double difference = number - mean;
+		mean += difference / count;
+		squares += difference * (number - mean);
+		gaussianModel = null;
+	}
+
+	/**
+	 * @param numbers
+	 *            to add to the statistics
+	 */
+	public void addAll(double[] numbers) {
+		addAll(numbers, 0, numbers.length);
+	}
+
+	/**
+	 * Add the numbers in blocks: the statistics of each block are computed
+	 * with two passes over it, while it is in the cache, and then merged
+	 * 
+	 * @param numbers
+	 *            array containing the numbers
+	 * @param offset
+	 *            of the first number in the array
+	 * @param length
+	 *            how many numbers to add
+	 */
+	public void addAll(double[] numbers, int offset, int length) {
+		for (int from = offset; from < offset + length; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, offset + length);
+
+			double sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += numbers[i];
+			}
+			double blockMean = sum / (to - from);
+
+			double blockSquares = 0;
+			for (int i = from; i < to; i++) {
+				double difference = numbers[i] - blockMean;
+				blockSquares += difference * difference;
+			}
+
+			merge(to - from, blockMean, blockSquares);
+		}
+	}
+
+	/**
+	 * @param other
+	 *            statistics of other numbers, added to these ones
+	 */
+	public void merge(Stat other) {
+		merge(other.count, other.mean, other.squares);
 	}
 
 	/**
-	 * @return the mean of the numbers in the array list
+	 * @param otherCount
+	 * @param otherMean
+	 * @param otherSquares
+	 *            sum of the squared differences to the other mean
 	 */
-	private double mean() {
-		double sum = 0;
-		for (int i = 0; i < signalNormalized.size(); i++) {
-			sum += signalNormalized.get(i);
+	private void merge(long otherCount, double otherMean, double otherSquares) {
+		if (otherCount == 0) {
+			return;
 		}
 
-		return Math.round(sum / signalNormalized.size() * 10000.0) / 10000.0;
+		long total = count + otherCount;
+		double difference = otherMean - mean;
+		mean += difference * otherCount / total;
+		squares += otherSquares + difference * difference * count
+				* otherCount / total;
+		count = total;
+		gaussianModel = null;
+	}
+
+	/**
+	 * @param sum
+	 *            of the numbers
+	 * @param size
+	 *            how many numbers were summed
+	 * @return the mean rounded to 4 decimal places, as the information of the
+	 *         signals is reported
+	 */
+	public static double roundedMean(double sum, int size) {
+		return Math.round(sum / size * 10000.0) / 10000.0;
 	}
 
 	/**
 	 * 
 	 * @param mean
-	 * @return the of the mean
+	 * @return the log of the mean rounded to 4 decimal places, as the
+	 *         information of the signals is reported
 	 */
-	private double log(double mean) {
+	public static double roundedLog(double mean) {
 		return Math.round(Math.log10(mean) * 10000.0) / 10000.0;
 	}
 
 	/**
-	 * @return the variance of the numbers in the array list given the mean
+	 * @return the variance of the numbers added
 	 */
 	public double getVariance() {
-		double sum = 0;
-		for (int i = 0; i < signalNormalized.size(); i++) {
-			sum += Math.pow(signalNormalized.get(i) - mean, 2.0);
-		}
-
-		return Math.round(sum / signalNormalized.size() * 10000.0) / 10000.0;
+		return squares / count;
 	}
 
 	/**
@@ -68,11 +177,19 @@ public class Stat {
 	 *         variance
 	 */
 	public double getNormalDistribution(double parameter) {
-		this.variance = getVariance();
-		double firstPart = (1 / Math.sqrt(2 * Math.PI * variance));
-		double secondPart = -Math.pow(parameter - mean, 2) / (2 * variance);
+		return fitGaussian().density(parameter);
+	}
 
-		return firstPart * Math.pow(Math.E, secondPart);
+	/**
+	 * @return the normal distribution with the mean and the variance of the
+	 *         numbers, computed again only after new numbers are added
+	 */
+	public GaussianModel fitGaussian() {
+		if (gaussianModel == null) {
+			gaussianModel = new GaussianModel(getMean(), getVariance());
+		}
+
+		return gaussianModel;
 	}
 	
 	/**
@@ -94,14 +211,21 @@ public class Stat {
 	 * @return the mean
 	 */
 	public double getMean() {
-		return this.mean;
+		return count == 0 ? Double.NaN : this.mean;
 	}
 
 	/**
 	 * @return the log in the basis of ten
 	 */
 	public double getLog() {
-		return this.log10;
+		return Math.log10(getMean());
+	}
+
+	/**
+	 * @return how many numbers were added
+	 */
+	public long getCount() {
+		return this.count;
 	}
 
 	/**
@@ -115,6 +239,6 @@ public class Stat {
 
 	@Override
 	public String toString() {
-		return ("Mean: " + mean + " Log 10: " + log10 + " Variance " + getVariance());
+		return ("Mean: " + getMean() + " Log 10: " + getLog() + " Variance " + getVariance());
 	}
 }
@@ -0,0 +1,264 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class that writes an xlsx sheet row by row. Each row is written to the
+ * compressed file as soon as it is given, so only the row being written and
+ * the buffer of the file are kept in memory, whatever the number of rows.
+ * Every cell shares a single style, Arial with thin borders and centred
+ * vertically as in WriteExcel, and text is written inline so no table of
+ * strings grows with the sheet
+ *
+ * @author enzoroiz
+ *
+ */
+public class StreamingExcelWriter implements Closeable {
+	/**
+	 * Final fields
+	 */
+	// Rows of an xlsx sheet
+	public static final int MAX_ROWS = 1048576;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// Index of the shared style in styles.xml
+	private static final int STYLE = 1;
+
+	private static final String CONTENT_TYPES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+			+ "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+			+ "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+			+ "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+			+ "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>"
+			+ "<Override PartName=\"/xl/worksheets/sheet1.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+			+ "</Types>";
+	private static final String RELATIONSHIPS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+			+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+			+ "</Relationships>";
+	private static final String WORKBOOK_RELATIONSHIPS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+			+ "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet1.xml\"/>"
+			+ "<Relationship Id=\"rId2\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>"
+			+ "</Relationships>";
+	private static final String STYLES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+			+ "<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+			+ "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+			+ "<font><sz val=\"10\"/><name val=\"Arial\"/></font></fonts>"
+			+ "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+			+ "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+			+ "<borders count=\"2\"><border><left/><right/><top/><bottom/><diagonal/></border>"
+			+ "<border><left style=\"thin\"/><right style=\"thin\"/><top style=\"thin\"/><bottom style=\"thin\"/><diagonal/></border></borders>"
+			+ "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>"
+			+ "<cellXfs count=\"2\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+			+ "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"1\" xfId=\"0\" applyFont=\"1\" applyBorder=\"1\" applyAlignment=\"1\">"
+			+ "<alignment vertical=\"center\"/></xf></cellXfs>"
+			+ "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+			+ "</styleSheet>";
+
+	/**
+	 * Instance fields
+	 */
+	private ZipOutputStream zip;
+	private Writer sheet;
+	private int rows;
+
+	/**
+	 * Constructor, creating the file and starting its sheet
+	 *
+	 * @param file
+	 *            to write, usually ending in .xlsx
+	 * @param sheetName
+	 * @throws IOException
+	 */
+	public StreamingExcelWriter(File file, String sheetName) throws IOException {
+		zip = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			writeEntry("[Content_Types].xml", CONTENT_TYPES);
+			writeEntry("_rels/.rels", RELATIONSHIPS);
+			writeEntry("xl/_rels/workbook.xml.rels", WORKBOOK_RELATIONSHIPS);
+			writeEntry("xl/styles.xml", STYLES);
+			writeEntry(
+					"xl/workbook.xml",
+					"<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+							+ "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+							+ " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+							+ "<sheets><sheet name=\"" + escape(sheetName)
+							+ "\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+
+			// The sheet is the last entry, written while the rows arrive
+			zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+			sheet = new BufferedWriter(new OutputStreamWriter(zip,
+					StandardCharsets.UTF_8), BUFFER_SIZE);
+			sheet.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+					+ "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">"
+					+ "<sheetData>");
+		} catch (IOException e) {
+			zip.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param name
+	 *            of the entry in the file
+	 * @param content
+	 * @throws IOException
+	 */
+	private void writeEntry(String name, String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(content.getBytes(StandardCharsets.UTF_8));
+		zip.closeEntry();
+	}
+
+	/**
+	 * Write the next row of the sheet
+	 *
+	 * @param cells
+	 *            String, Number or Boolean values, null for an empty cell
+	 * @throws IOException
+	 */
+	public void writeRow(Object... cells) throws IOException {
+		if (rows == MAX_ROWS) {
+			throw new IOException("An xlsx sheet has at most " + MAX_ROWS
+					+ " rows");
+		}
+		rows++;
+
+		sheet.write("<row r=\"");
+		sheet.write(Integer.toString(rows));
+		sheet.write("\">");
+
+		for (int j = 0; j < cells.length; j++) {
+			if (cells[j] != null) {
+				writeCell(j, cells[j]);
+			}
+		}
+
+		sheet.write("</row>");
+	}
+
+	/**
+	 * Write the features of groups of signals side by side, one signal of
+	 * each group per row, as WriteExcel.writeDataInColumns
+	 *
+	 * @param groups
+	 *            e.g. the silence and the speech signals
+	 * @throws IOException
+	 */
+	public void writeDataInColumns(List<FeatureMatrix> groups)
+			throws IOException {
+		int size = 0;
+		int width = 0;
+		for (FeatureMatrix group : groups) {
+			size = Math.max(size, group.rows());
+			width += group.features();
+		}
+
+		Object[] cells = new Object[width];
+		for (int i = 0; i < size; i++) {
+			int j = 0;
+			for (FeatureMatrix group : groups) {
+				for (int m = 0; m < group.features(); m++) {
+					cells[j++] = i < group.rows() ? group.column(m)[i] : null;
+				}
+			}
+			writeRow(cells);
+		}
+	}
+
+	/**
+	 * @param column
+	 *            starting at 0
+	 * @param value
+	 * @throws IOException
+	 */
+	private void writeCell(int column, Object value) throws IOException {
+		sheet.write("<c r=\"");
+		sheet.write(columnName(column));
+		sheet.write(Integer.toString(rows));
+		sheet.write("\" s=\"" + STYLE + "\"");
+
+		boolean number = value instanceof Number;
+		if (number) {
+			double d = ((Number) value).doubleValue();
+			// As WriteExcel, values that are not numbers are written as "-"
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				value = "-";
+				number = false;
+			}
+		}
+
+		if (number) {
+			sheet.write("><v>");
+			sheet.write(value.toString());
+			sheet.write("</v></c>");
+		} else if (value instanceof Boolean) {
+			sheet.write(" t=\"b\"><v>");
+			sheet.write((Boolean) value ? "1" : "0");
+			sheet.write("</v></c>");
+		} else {
+			sheet.write(" t=\"inlineStr\"><is><t>");
+			sheet.write(escape(value.toString()));
+			sheet.write("</t></is></c>");
+		}
+	}
+
+	/**
+	 * @param column
+	 *            starting at 0
+	 * @return the letters of the column, e.g. A, Z, AA
+	 */
+	private static String columnName(int column) {
+		StringBuilder name = new StringBuilder();
+		for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+			name.insert(0, (char) ('A' + (c - 1) % 26));
+		}
+
+		return name.toString();
+	}
+
+	/**
+	 * @param text
+	 * @return the text with the XML special characters escaped
+	 */
+	private static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/**
+	 * @return the number of rows written so far
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Finish the sheet and the file
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (zip == null) {
+			return;
+		}
+
+		try {
+			sheet.write("</sheetData></worksheet>");
+			sheet.flush();
+			zip.closeEntry();
+		} finally {
+			zip.close();
+			zip = null;
+		}
+	}
+}
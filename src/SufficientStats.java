@@ -0,0 +1,87 @@
+/**
+ * Class that keeps the count, the sum and the sum of squares of some numbers,
+ * which is enough to fit a normal distribution to them. The statistics of a
+ * subset can be subtracted from the ones of the whole set, so the training set
+ * of each fold costs O(1) once the totals are known. The numbers are shifted
+ * by a value close to them to avoid cancellation in the variance
+ *
+ * @author enzoroiz
+ *
+ */
+public class SufficientStats {
+	/**
+	 * Instance fields
+	 */
+	private double shift;
+	private int count;
+	private double sum;
+	private double shiftedSum;
+	private double sumOfSquares;
+
+	/**
+	 * Constructor
+	 *
+	 * @param shift
+	 *            subtracted from every number, e.g. the first one
+	 */
+	public SufficientStats(double shift) {
+		this.shift = shift;
+	}
+
+	/**
+	 * @param number
+	 *            to add to the statistics
+	 */
+	public void add(double number) {
+		double shifted = number - shift;
+		count++;
+		sum += number;
+		shiftedSum += shifted;
+		sumOfSquares += shifted * shifted;
+	}
+
+	/**
+	 * @param subset
+	 *            statistics of some of the numbers added to this one, with the
+	 *            same shift
+	 * @return the statistics of the remaining numbers
+	 */
+	public SufficientStats minus(SufficientStats subset) {
+		if (subset.shift != shift) {
+			throw new IllegalArgumentException(
+					"The statistics must have the same shift");
+		}
+
+		SufficientStats remaining = new SufficientStats(shift);
+		remaining.count = count - subset.count;
+		remaining.sum = sum - subset.sum;
+		remaining.shiftedSum = shiftedSum - subset.shiftedSum;
+		remaining.sumOfSquares = sumOfSquares - subset.sumOfSquares;
+
+		return remaining;
+	}
+
+	/**
+	 * @return the normal distribution of the numbers, with the mean and the
+	 *         variance rounded to 4 decimal places as by Stat.roundedMean, so
+	 *         the models are the ones the classifier always fitted
+	 */
+	public GaussianModel toGaussian() {
+		double mean = Stat.roundedMean(sum, count);
+
+		// Sum of (x - mean)^2 from the sums of the shifted numbers
+		double meanShifted = mean - shift;
+		double squares = sumOfSquares - 2 * meanShifted * shiftedSum + count
+				* meanShifted * meanShifted;
+		double variance = Stat.roundedMean(Math.max(squares, 0), count);
+
+		return new GaussianModel(mean, variance);
+	}
+
+	/**
+	 * @return how many numbers were added
+	 */
+	public int getCount() {
+		return count;
+	}
+}
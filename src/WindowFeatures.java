@@ -0,0 +1,99 @@
+/**
+ * Class that stores the signals and the information extracted from a sample
+ * with one window size
+ *
+ * @author enzoroiz
+ *
+ */
+public class WindowFeatures {
+	/**
+	 * Instance fields
+	 */
+	private int window;
+	private SignalBuffer movingAverage;
+	private SignalBuffer convolution;
+	private SignalBuffer energy;
+	private SignalBuffer magnitude;
+	private SignalBuffer zeroCrossingRate;
+	private SignalInfo signalInfo;
+
+	/**
+	 * Constructor
+	 *
+	 * @param window
+	 *            in milliseconds
+	 * @param movingAverage
+	 *            normalized
+	 * @param convolution
+	 *            normalized
+	 * @param energy
+	 * @param magnitude
+	 * @param zeroCrossingRate
+	 * @param signalInfo
+	 *            log of the average of energy and magnitude and average of
+	 *            zero crossing rate
+	 */
+	public WindowFeatures(int window, SignalBuffer movingAverage,
+			SignalBuffer convolution, SignalBuffer energy,
+			SignalBuffer magnitude, SignalBuffer zeroCrossingRate,
+			SignalInfo signalInfo) {
+		this.window = window;
+		this.movingAverage = movingAverage;
+		this.convolution = convolution;
+		this.energy = energy;
+		this.magnitude = magnitude;
+		this.zeroCrossingRate = zeroCrossingRate;
+		this.signalInfo = signalInfo;
+	}
+
+	/**
+	 * @return the window in milliseconds
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * @return the moving average, as SignalProcessing.movingAverageBuffer
+	 */
+	public SignalBuffer getMovingAverage() {
+		return movingAverage;
+	}
+
+	/**
+	 * @return the convolution, as SignalProcessing.convolutionBuffer
+	 */
+	public SignalBuffer getConvolution() {
+		return convolution;
+	}
+
+	/**
+	 * @return the energy, as SignalProcessing.energyBuffer
+	 */
+	public SignalBuffer getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * @return the magnitude, as SignalProcessing.magnitudeBuffer
+	 */
+	public SignalBuffer getMagnitude() {
+		return magnitude;
+	}
+
+	/**
+	 * @return the zero crossing rate, as
+	 *         SignalProcessing.zeroCrossingRateBuffer
+	 */
+	public SignalBuffer getZeroCrossingRate() {
+		return zeroCrossingRate;
+	}
+
+	/**
+	 * @return the information of the sample, as
+	 *         SignalProcessing.getSignalInfos
+	 */
+	public SignalInfo getSignalInfo() {
+		return signalInfo;
+	}
+}
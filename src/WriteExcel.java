@@ -29,6 +29,8 @@ public class WriteExcel {
 	private final String SHEET = "assets/Results.xls";
 	private HSSFSheet sheet;
 	private HSSFWorkbook workbook;
+	// Shared by every cell written, created in the first write
+	private CellStyle style;
 
 	public WriteExcel() {
 		// Open the model localized in ASSETS
@@ -55,20 +57,40 @@ public class WriteExcel {
 	 */
 	public int writeDataInColumns(ArrayList<SignalInfo> data,
 			Integer startingColumn) {
+		return writeDataInColumns(
+				FeatureMatrix.fromSignalInfos(data, NaiveBayesModel.SILENCE),
+				startingColumn);
+	}
+
+	/**
+	 * Write the features of the matrix in columns, one row per signal
+	 * 
+	 * @param data
+	 *            to be written
+	 * @param startingColumn
+	 * @return the first empty column
+	 */
+	public int writeDataInColumns(FeatureMatrix data, Integer startingColumn) {
 		if (startingColumn == null) {
 			startingColumn = 0;
 		}
 
 		int startingRow = 2;
-		int j = 0;
-		CellStyle style = createStyle();
+		if (style == null) {
+			style = createStyle();
+		}
+		if (data.rows() == 0) {
+			return startingColumn;
+		}
 		Row row;
 		Cell cell;
 
-		// For each row
-		for (int i = 0; i < data.size(); i++) {
-			// For each column
-			for (j = 0; j < SignalInfo.NUM_INFO; j++) {
+		// For each column
+		for (int j = 0; j < data.features(); j++) {
+			double[] column = data.column(j);
+
+			// For each row
+			for (int i = 0; i < column.length; i++) {
 				row = sheet.getRow(i + startingRow);
 
 				if (row == null) {
@@ -76,14 +98,12 @@ public class WriteExcel {
 				}
 
 				cell = row.createCell(j + startingColumn);
-				writeCell(cell, data.get(i).get(j));
+				writeCell(cell, column[i]);
 				cell.setCellStyle(style);
 			}
 		}
 
-		startingColumn += j;
-
-		return startingColumn;
+		return startingColumn + data.features();
 	}
 
 	/**
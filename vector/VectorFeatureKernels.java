@@ -0,0 +1,107 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels of FeatureKernels using the Vector API, with the widest vectors of
+ * the processor, e.g. 4 doubles with AVX2 and 8 with AVX-512. Two vectors
+ * are accumulated at a time so consecutive additions do not wait for each
+ * other, and the positions after the last full vector are added one by one.
+ * Kept out of src because the module has to be added to compile it; it is
+ * loaded by FeatureKernels when available
+ *
+ * @author enzoroiz
+ *
+ */
+public class VectorFeatureKernels extends FeatureKernels {
+	/**
+	 * Final fields
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+
+	@Override
+	public String getName() {
+		return VECTOR + " (" + SPECIES.vectorBitSize() + " bits)";
+	}
+
+	@Override
+	public double sumOfSquares(double[] x, int from, int to) {
+		checkRange(x, from, to);
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		DoubleVector sum2 = DoubleVector.zero(SPECIES);
+
+		int i = from;
+		for (; i + 2 * LANES <= to; i += 2 * LANES) {
+			DoubleVector v = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector v2 = DoubleVector.fromArray(SPECIES, x, i + LANES);
+			sum = v.fma(v, sum);
+			sum2 = v2.fma(v2, sum2);
+		}
+
+		double total = sum.add(sum2).reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			total += x[i] * x[i];
+		}
+
+		return total;
+	}
+
+	@Override
+	public double absoluteSum(double[] x, int from, int to) {
+		checkRange(x, from, to);
+		DoubleVector sum = DoubleVector.zero(SPECIES);
+		DoubleVector sum2 = DoubleVector.zero(SPECIES);
+
+		int i = from;
+		for (; i + 2 * LANES <= to; i += 2 * LANES) {
+			sum = sum.add(DoubleVector.fromArray(SPECIES, x, i).abs());
+			sum2 = sum2.add(DoubleVector.fromArray(SPECIES, x, i + LANES)
+					.abs());
+		}
+
+		double total = sum.add(sum2).reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			total += Math.abs(x[i]);
+		}
+
+		return total;
+	}
+
+	@Override
+	public int zeroCrossings(double[] x, int from, int to) {
+		checkRange(x, from - 1, to);
+		int crossings = 0;
+
+		// Each position is compared with the vector shifted by one
+		int i = from;
+		for (; i + LANES <= to; i += LANES) {
+			VectorMask<Double> now = DoubleVector.fromArray(SPECIES, x, i)
+					.compare(VectorOperators.GE, 0);
+			VectorMask<Double> before = DoubleVector.fromArray(SPECIES, x,
+					i - 1).compare(VectorOperators.GE, 0);
+			crossings += now.eq(before).not().trueCount();
+		}
+
+		for (; i < to; i++) {
+			if ((x[i] >= 0) != (x[i - 1] >= 0)) {
+				crossings++;
+			}
+		}
+
+		return crossings;
+	}
+
+	/**
+	 * @param x
+	 * @param from
+	 * @param to
+	 */
+	private static void checkRange(double[] x, int from, int to) {
+		if (from < 0 || to > x.length || from > to) {
+			throw new IndexOutOfBoundsException("Invalid range [" + from
+					+ ", " + to + ") for an array of " + x.length);
+		}
+	}
+}